@@ -60,6 +60,19 @@ public interface MessageBus {
      */
     <T> Future<T> sendEvent(Event<T> e);
 
+    /**
+     * Adds the {@link Event} {@code e} to the message queue of {@code m}, bypassing the
+     * round-robin. Used to route events by key to a service that owns that key.
+     * This method should be non-blocking.
+     * <p>
+     * @param <T>    	The type of the result expected by the event and its corresponding future object.
+     * @param e     	The event to add to the queue.
+     * @param m     	The micro-service that should handle {@code e}.
+     * @return {@link Future<T>} object to be resolved once the processing is complete,
+     * 	       null in case {@code m} is not registered.
+     */
+    <T> Future<T> sendEvent(Event<T> e, MicroService m);
+
     /**
      * Allocates a message-queue for the {@link MicroService} {@code m}.
      * <p>
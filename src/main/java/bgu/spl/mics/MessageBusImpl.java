@@ -2,12 +2,18 @@ package bgu.spl.mics;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MessageBusImpl implements MessageBus {
 	private final Map<Class<? extends Message>, List<MicroService>> broadcastSubscribers;
 	private final Map<Class<? extends Event<?>>, Queue<MicroService>> eventSubscribers;
 	final Map<MicroService, LinkedBlockingQueue<Message>> microServiceQueues;
 	private final Map<Event<?>, Future<?>> futureMap;
+	// messages sent to each micro-service that it has not finished handling (queued, or the one it is handling)
+	private final Map<MicroService, AtomicInteger> unfinished;
+	private final Set<MicroService> handling;
+	private final AtomicLong deliveries;
 
 	private static MessageBusImpl instance = null;
 
@@ -16,26 +22,20 @@ public class MessageBusImpl implements MessageBus {
 		eventSubscribers = new ConcurrentHashMap<>();
 		broadcastSubscribers = new ConcurrentHashMap<>();
 		futureMap = new ConcurrentHashMap<>();
+		unfinished = new ConcurrentHashMap<>();
+		handling = ConcurrentHashMap.newKeySet();
+		deliveries = new AtomicLong();
 	}
 
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		Queue<MicroService> subscribers = eventSubscribers.get(type);
-		if (subscribers == null) {
-			subscribers = new ConcurrentLinkedQueue<>();
-			eventSubscribers.put(type, subscribers);
-		}
-		subscribers.add(m);
+		// services subscribe from their own threads, so the first two subscribers of a type may race
+		eventSubscribers.computeIfAbsent(type, t -> new ConcurrentLinkedQueue<>()).add(m);
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-		List<MicroService> subscribers = broadcastSubscribers.get(type);
-		if (subscribers == null) {
-			subscribers = new CopyOnWriteArrayList<>();
-			broadcastSubscribers.put(type, subscribers);
-		}
-		subscribers.add(m);
+		broadcastSubscribers.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(m);
 	}
 
 	@Override
@@ -53,7 +53,7 @@ public class MessageBusImpl implements MessageBus {
 			for (MicroService m : subscribers) {
 				LinkedBlockingQueue<Message> queue = microServiceQueues.get(m);
 				if (queue != null) {
-					queue.add(b);  // Send the broadcast message to each subscriber's queue
+					deliver(m, queue, b);  // Send the broadcast message to each subscriber's queue
 				}
 			}
 		}
@@ -72,7 +72,19 @@ public class MessageBusImpl implements MessageBus {
 		if (queue != null) {
 			Future<T> future = new Future<>();
 			futureMap.put(e, future);
-			queue.add(e);  // Place the event in the microservice's message queue
+			deliver(m, queue, e);  // Place the event in the microservice's message queue
+			return future;
+		}
+		return null;
+	}
+
+	@Override
+	public <T> Future<T> sendEvent(Event<T> e, MicroService m) {
+		BlockingQueue<Message> queue = microServiceQueues.get(m);
+		if (queue != null) {
+			Future<T> future = new Future<>();
+			futureMap.put(e, future);
+			deliver(m, queue, e);
 			return future;
 		}
 		return null;
@@ -81,6 +93,7 @@ public class MessageBusImpl implements MessageBus {
 	@Override
 	public void register(MicroService m) {
 		if (!microServiceQueues.containsKey(m)) {
+			unfinished.put(m, new AtomicInteger());
 			microServiceQueues.put(m, new LinkedBlockingQueue<>());
 		}
 	}
@@ -88,6 +101,8 @@ public class MessageBusImpl implements MessageBus {
 	@Override
 	public void unregister(MicroService m) {
 		microServiceQueues.remove(m);
+		unfinished.remove(m);
+		handling.remove(m);
 		for (List<MicroService> subscribers : broadcastSubscribers.values()) {
 			subscribers.remove(m);  // Safely remove the MicroService from each broadcast subscriber list
 		}
@@ -103,14 +118,59 @@ public class MessageBusImpl implements MessageBus {
 			throw new IllegalStateException("MicroService " + m.getName() + " is not registered.");
 		}
 
+		AtomicInteger count = unfinished.get(m);
+		if (handling.remove(m) && count != null) {
+			count.decrementAndGet();  // asking for the next message means the previous one was handled
+		}
 		try {
-			return microServiceQueues.get(m).take();
+			Message message = microServiceQueues.get(m).take();
+			handling.add(m);
+			return message;
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			return null;
 		}
 	}
 
+	/**
+	 * Waits until every registered micro-service has handled all the messages sent to it, including
+	 * those sent while handling others, so no message is queued or being handled.
+	 *
+	 * @return true if the bus went idle within {@code timeout}.
+	 */
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!isIdle()) {
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	/**
+	 * A message only reaches a micro-service with nothing unfinished through a delivery, so a scan
+	 * that finds every count at zero and no delivery made meanwhile saw the bus idle.
+	 */
+	private boolean isIdle() {
+		long before = deliveries.get();
+		for (AtomicInteger count : unfinished.values()) {
+			if (count.get() > 0) {
+				return false;
+			}
+		}
+		return deliveries.get() == before;
+	}
+
+	private void deliver(MicroService m, BlockingQueue<Message> queue, Message message) {
+		AtomicInteger count = unfinished.get(m);
+		if (count != null) {
+			count.incrementAndGet();
+		}
+		deliveries.incrementAndGet();
+		queue.add(message);
+	}
 
 	public static MessageBusImpl getInstance() {
 		if (instance == null) {
@@ -48,6 +48,13 @@ public abstract class MicroService implements Runnable {
         return MBinstance.sendEvent(e);
     }
 
+    /**
+     * Sends an event {@code e} to the micro-service {@code target} and receives a {@link Future<T>} object.
+     */
+    protected final <T> Future<T> sendEvent(Event<T> e, MicroService target) {
+        return MBinstance.sendEvent(e, target);
+    }
+
     /**
      * Sends a broadcast message {@code b} to all services subscribed to it.
      */
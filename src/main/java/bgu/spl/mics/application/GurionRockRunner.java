@@ -1,10 +1,21 @@
 package bgu.spl.mics.application;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import bgu.spl.mics.MessageBusImpl;
 import bgu.spl.mics.application.input.CameraConfiguration;
 import bgu.spl.mics.application.input.Configuration;
 import bgu.spl.mics.application.input.LidarConfig;
+import bgu.spl.mics.application.input.SensorFileTailer;
+import bgu.spl.mics.application.input.StartupReport;
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.services.*;
 
@@ -21,10 +32,22 @@ public class GurionRockRunner {
      * initializes services, and starts the simulation.
      *
      * @param args Command-line arguments. The first argument is expected to be the path to the configuration file.
+     *             {@code --resume} continues from {@code checkpoint.bin} next to it.
      */
     public static void main(String[] args) {
         System.out.println("Starting simulation...");
 
+        boolean resume = false;
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if ("--resume".equals(arg)) {
+                resume = true;
+            } else {
+                arguments.add(arg);
+            }
+        }
+        args = arguments.toArray(new String[0]);
+
         if (args.length < 1) {
             System.err.println("Error: Base path for configuration file is required as the first argument.");
             return;
@@ -36,19 +59,85 @@ public class GurionRockRunner {
             configFilePath = configFilePath  +" "+ args[1];
         }
         System.out.println("Using configuration file path: " + configFilePath);
+        String finalConfigFilePath = configFilePath;
 
         int microServicesCnt = 0;
+        SensorFileTailer tailer = null;
 
         try {
             // Load configuration
             System.out.println("Loading configuration...");
-            Configuration config = Configuration.getInstance(configFilePath);
+            StartupReport startupReport = new StartupReport();
+            Configuration config = startupReport.time("configuration", () -> Configuration.getInstance(finalConfigFilePath));
             System.out.println("Configuration loaded: " + config);
 
+            // Checkpoints, and the one to resume from
+            CheckpointManager checkpoints = CheckpointManager.getInstance();
+            Path checkpointPath = Paths.get(finalConfigFilePath).toAbsolutePath().resolveSibling("checkpoint.bin");
+            checkpoints.configure(checkpointPath, config.getCheckpointIntervalTicks());
+            if (resume) {
+                SimulationCheckpoint checkpoint;
+                try {
+                    checkpoint = startupReport.time("checkpoint", () -> {
+                        try {
+                            return SimulationCheckpoint.read(checkpointPath);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    System.err.println("Error: Could not read the checkpoint to resume from: " + e.getCause().getMessage());
+                    return;
+                }
+                checkpoints.resumeFrom(checkpoint);
+                System.out.println("Resuming from the checkpoint before tick " + checkpoint.getTick() + ".");
+            }
+
+            // Load LiDAR, camera and pose data
+            LiDarDataBase.getInstance().setRetention(config.getLidarRetentionTicks());
+            GPSIMU gpsimu;
+            List<Camera> cameras;
+            if (config.isTailMode()) {
+                System.out.println("Tail mode: sensor files will be read while the simulation runs.");
+                tailer = new SensorFileTailer();
+                LiDarDataBase.getInstance().setLive(true);
+                LiDarDataBase.getInstance().setSinglePrecision(config.getLidarWorkers().isSinglePrecision());
+                tailer.watchLidarData(config.getLidarWorkers().getLidarsDataPath(), LiDarDataBase.getInstance());
+
+                gpsimu = new GPSIMU(new CopyOnWriteArrayList<>());
+                gpsimu.setLive(true);
+                tailer.watchPoseData(config.getPoseJsonFile(), gpsimu);
 
-            // Initialize LiDAR data
-            config.initializeLiDarDataBase();
-            System.out.println("LiDAR data initialized successfully.");
+                cameras = CameraConfiguration.getCameras();
+                tailer.watchCameraData(config.getCameras().getCameraDatasPath(), CameraConfiguration.getCamerasByKey(cameras));
+                startupReport.time("initial tail read", tailer::pollOnce);
+                Thread tailerThread = new Thread(tailer, "SensorFileTailer");
+                tailerThread.setDaemon(true);
+                tailerThread.start();
+                System.out.println("SensorFileTailer started.");
+            } else {
+                ExecutorService loaders = Executors.newFixedThreadPool(3);
+                try {
+                    java.util.concurrent.Future<Void> lidarLoad = loaders.submit(() -> startupReport.time("LiDAR data", () -> {
+                        config.initializeLiDarDataBase();
+                        return null;
+                    }));
+                    java.util.concurrent.Future<List<Camera>> cameraLoad =
+                            loaders.submit(() -> startupReport.time("camera data", CameraConfiguration::getCameras));
+                    java.util.concurrent.Future<List<Pose>> poseLoad =
+                            loaders.submit(() -> startupReport.time("pose data", config::loadPoseList));
+
+                    lidarLoad.get();
+                    cameras = cameraLoad.get();
+                    gpsimu = new GPSIMU(poseLoad.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to load input files", e.getCause());
+                } finally {
+                    loaders.shutdown();
+                }
+                System.out.println("LiDAR data initialized successfully.");
+            }
+            startupReport.print();
 
             // Initialize MessageBus
             System.out.println("Initializing MessageBus...");
@@ -57,7 +146,6 @@ public class GurionRockRunner {
 
             // Initialize PoseService
             System.out.println("Initializing PoseService...");
-            GPSIMU gpsimu = new GPSIMU();
             PoseService poseService = new PoseService(gpsimu);
             Thread poseThread = new Thread(poseService, "PoseService");
             poseThread.start();
@@ -66,7 +154,6 @@ public class GurionRockRunner {
 
             // Initialize Cameras and Camera Services
             System.out.println("Initializing Camera Services...");
-            List<Camera> cameras = CameraConfiguration.getCameras();
             for (Camera camera : cameras) {
                 System.out.println("Initializing CameraService for Camera ID: " + camera.getId());
                 CameraService cameraService = new CameraService(camera);
@@ -82,6 +169,8 @@ public class GurionRockRunner {
             for (LidarConfig lidarConfig : lidarConfigs) {
                 System.out.println("Initializing LiDAR Worker for ID: " + lidarConfig.getId());
                 LiDarWorkerTracker lidarTracker = new LiDarWorkerTracker(lidarConfig.getId(), lidarConfig.getFrequency());
+                lidarTracker.setDownsampler(lidarConfig.getDownsampler());
+                lidarTracker.setPointQuantum(config.getLidarWorkers().getTrackedPointQuantum());
                 LiDarService lidarService = new LiDarService(lidarTracker);
                 Thread lidarThread = new Thread(lidarService, "LiDarService-" + lidarConfig.getId());
                 lidarThread.start();
@@ -92,14 +181,52 @@ public class GurionRockRunner {
             // Initialize Fusion-SLAM
             System.out.println("Initializing Fusion-SLAM...");
             FusionSlam fusionSlam = FusionSlam.getInstance(microServicesCnt , config.getDuration(), configFilePath);
-            FusionSlamService fusionSlamService = new FusionSlamService(fusionSlam);
+            if (config.isOffHeapLandmarks()) {
+                fusionSlam.useOffHeapLandmarkStore();
+            }
+            fusionSlam.setPoseRetention(config.getPoseRetentionTicks());
+            fusionSlam.setParallelThreshold(config.getFusionParallelThreshold());
+            fusionSlam.setVarianceTracking(config.isLandmarkVarianceTracking());
+            if (config.getBinaryMapOutput() != null) {
+                fusionSlam.enableBinaryMapOutput("float32".equals(config.getBinaryMapOutput()));
+            }
+            if (config.getMapDeltaIntervalTicks() > 0) {
+                fusionSlam.enableMapDeltaLog(config.getMapDeltaIntervalTicks(), config.getMapCompactionRecords());
+            }
+            if (config.getSpatialIndexCellSize() > 0) {
+                fusionSlam.enableSpatialIndex(config.getSpatialIndexCellSize());
+            }
+            if (config.isMapHistory()) {
+                fusionSlam.enableHistory(config.getMapHistoryRetentionTicks());
+            }
+            if (config.getPriorMapFile() != null && checkpoints.getResumeCheckpoint() == null) {
+                try {
+                    fusionSlam.loadPriorMap(Paths.get(config.getPriorMapFile()));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to load prior map " + config.getPriorMapFile(), e);
+                }
+            }
+            fusionSlam.configurePendingTrackedObjects(config.getPendingTrackedObjectsLimit(), config.getPendingTrackedObjectsExpiryTicks());
+            checkpoints.register(fusionSlam);
+            List<FusionSlamShardService> shards = new ArrayList<>();
+            if (config.getFusionShards() > 1) {
+                for (int shard = 0; shard < config.getFusionShards(); shard++) {
+                    FusionSlamShardService shardService = new FusionSlamShardService(shard, fusionSlam);
+                    new Thread(shardService, "FusionSlamShard-" + shard).start();
+                    shards.add(shardService);
+                }
+                System.out.println("Fusion-SLAM sharded " + shards.size() + " ways.");
+            }
+            FusionSlamService fusionSlamService = new FusionSlamService(fusionSlam, shards);
             Thread fusionThread = new Thread(fusionSlamService, "FusionSlamService");
             fusionThread.start();
             System.out.println("Fusion-SLAM initialized and service started.");
 
             // Initialize TimeService
             System.out.println("Initializing TimeService...");
-            TimeService timeService = new TimeService(config.getTickTime(), config.getDuration());
+            SimulationCheckpoint resumed = checkpoints.getResumeCheckpoint();
+            TimeService timeService = new TimeService(config.getTickTime(), config.getDuration(),
+                    resumed == null ? 0 : resumed.getTick());
             Thread timeThread = new Thread(timeService, "TimeService");
             timeThread.start();
             System.out.println("TimeService started.");
@@ -109,6 +236,8 @@ public class GurionRockRunner {
             System.out.println("Waiting for TimeService to finish...");
             timeThread.join();
             System.out.println("TimeService completed.");
+            checkpoints.awaitWrites();
+            System.out.println("Checkpoints: " + checkpoints.report());
 
             //fusionSlam.createOutputFile();
             //System.out.println("Output file generated successfully.");
@@ -121,6 +250,9 @@ public class GurionRockRunner {
             System.err.println("Simulation interrupted by interruption: " + e.getMessage());
             e.printStackTrace();
         } finally {
+            if (tailer != null) {
+                tailer.stop();
+            }
             System.out.println("Simulation finished.");
         }
     }
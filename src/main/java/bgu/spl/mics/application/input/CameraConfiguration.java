@@ -2,12 +2,14 @@ package bgu.spl.mics.application.input;
 
 import bgu.spl.mics.application.objects.Camera;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
-import java.io.FileReader;
-import java.lang.reflect.Type;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,26 +18,60 @@ public class CameraConfiguration {
     public static List<Camera> getCameras() {
         Configuration config = Configuration.getInstance(null);
         List<Camera> cameras = new ArrayList<>();
+        if (config.isTailMode()) {
+            // Detections are appended by the SensorFileTailer while the simulation runs.
+            for (CameraConfig c : config.getCameras().getCamerasConfigurations()) {
+                Camera camera = new Camera(c.getId(), c.getFrequency());
+                camera.setLive(true);
+                cameras.add(camera);
+            }
+            return cameras;
+        }
         CamerasData camerasData = readCamerasData(config.getCameras().getCameraDatasPath() );
         for(CameraConfig c : config.getCameras().getCamerasConfigurations()){
             Camera camera = new Camera(c.getId(), c.getFrequency());
             List<StampedDetectedObjects> detectedObjects = camerasData.getCameras().get(c.getcamera_key());
             if (detectedObjects != null) {
-                for (StampedDetectedObjects stampedObject : detectedObjects) {
-                    camera.addDetectedObject(stampedObject);
-                }
+                camera.addDetectedObjects(detectedObjects);
             }
             cameras.add(camera);
         }
         return cameras;
     }
-    public static CamerasData readCamerasData(String filePath) {
-        try (FileReader reader = new FileReader(filePath)) {
-            Gson gson = new Gson();
+    /**
+     * Maps each camera_key of the camera data file to the camera it feeds.
+     */
+    public static Map<String, Camera> getCamerasByKey(List<Camera> cameras) {
+        Configuration config = Configuration.getInstance(null);
+        Map<String, Camera> camerasByKey = new HashMap<>();
+        for (CameraConfig c : config.getCameras().getCamerasConfigurations()) {
+            for (Camera camera : cameras) {
+                if (camera.getId().equals(c.getId())) {
+                    camerasByKey.put(c.getcamera_key(), camera);
+                }
+            }
+        }
+        return camerasByKey;
+    }
 
+    public static CamerasData readCamerasData(String filePath) {
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8), 1 << 16))) {
+            SensorTypeAdapters.StampedDetectedObjectsAdapter adapter = new SensorTypeAdapters.StampedDetectedObjectsAdapter();
+            Map<String, List<StampedDetectedObjects>> cameras = new HashMap<>();
 
-            Type type = new TypeToken<Map<String, List<StampedDetectedObjects>>>() {}.getType();
-            Map<String, List<StampedDetectedObjects>> cameras = gson.fromJson(reader, type);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String cameraKey = reader.nextName();
+                List<StampedDetectedObjects> detectedObjects = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    detectedObjects.add(adapter.read(reader));
+                }
+                reader.endArray();
+                cameras.put(cameraKey, detectedObjects);
+            }
+            reader.endObject();
 
             CamerasData camerasData = new CamerasData();
             camerasData.setCameras(cameras);
@@ -0,0 +1,135 @@
+package bgu.spl.mics.application.input;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Parses a top-level JSON array in chunks on the common fork-join pool.
+ * The text is split between elements with a light scan (brackets and strings only); every
+ * chunk is then parsed by its own adapter instance and the results are joined in file order.
+ */
+public class ChunkedJsonArrayParser {
+    private static final int MIN_CHUNK_CHARS = 1 << 20;
+
+    private ChunkedJsonArrayParser() {
+    }
+
+    public static <T> List<T> parseFile(String filePath, Supplier<? extends TypeAdapter<T>> adapters) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8);
+        return parse(text, adapters);
+    }
+
+    public static <T> List<T> parse(String text, Supplier<? extends TypeAdapter<T>> adapters) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        return parse(text, Math.max(MIN_CHUNK_CHARS, text.length() / (parallelism * 4)), adapters);
+    }
+
+    /**
+     * Parses with chunks of about {@code targetChunkChars}; a chunk ends at the first element boundary past it.
+     */
+    public static <T> List<T> parse(String text, int targetChunkChars, Supplier<? extends TypeAdapter<T>> adapters) throws IOException {
+        List<int[]> chunks = split(text, targetChunkChars);
+
+        if (chunks.size() <= 1) {
+            return parseChunk(text, chunks.isEmpty() ? null : chunks.get(0), adapters.get());
+        }
+        try {
+            List<List<T>> parsed = chunks.parallelStream()
+                    .map(chunk -> {
+                        try {
+                            return parseChunk(text, chunk, adapters.get());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+            List<T> result = new ArrayList<>();
+            for (List<T> part : parsed) {
+                result.addAll(part);
+            }
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static <T> List<T> parseChunk(String text, int[] chunk, TypeAdapter<T> adapter) throws IOException {
+        List<T> result = new ArrayList<>();
+        if (chunk == null) {
+            return result;
+        }
+        JsonReader reader = new JsonReader(new StringReader("[" + text.substring(chunk[0], chunk[1]) + "]"));
+        reader.beginArray();
+        while (reader.hasNext()) {
+            result.add(adapter.read(reader));
+        }
+        reader.endArray();
+        return result;
+    }
+
+    /**
+     * @return [start, end) ranges that each hold whole array elements separated by commas.
+     */
+    static List<int[]> split(String text, int targetChunkChars) {
+        List<int[]> chunks = new ArrayList<>();
+        int i = skipWhitespace(text, 0);
+        if (i >= text.length() || text.charAt(i) != '[') {
+            throw new JsonParseException("Expected a JSON array");
+        }
+        i++;
+        int depth = 0;
+        int chunkStart = -1;
+        boolean inString = false;
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (chunkStart < 0 && !Character.isWhitespace(c) && c != ']') {
+                chunkStart = i;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == '}' || (c == ']' && depth > 0)) {
+                depth--;
+            } else if (c == ']') {
+                break;
+            } else if (c == ',' && depth == 0) {
+                if (i - chunkStart >= targetChunkChars) {
+                    chunks.add(new int[]{chunkStart, i});
+                    chunkStart = -1;
+                }
+            }
+        }
+        if (chunkStart >= 0) {
+            chunks.add(new int[]{chunkStart, i});
+        }
+        return chunks;
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -10,8 +10,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
 
 /**
  * Represents the configuration data for the simulation.
@@ -25,6 +23,22 @@ public class Configuration {
     private String poseJsonFile;
     private int TickTime;
     private int Duration;
+    private boolean TailMode;
+    private int PoseRetentionTicks;
+    private int PendingTrackedObjectsLimit;
+    private int PendingTrackedObjectsExpiryTicks;
+    private int FusionParallelThreshold;
+    private int FusionShards;
+    private double SpatialIndexCellSize;
+    private boolean LandmarkVarianceTracking;
+    private String BinaryMapOutput;
+    private int MapDeltaIntervalTicks;
+    private int MapCompactionRecords;
+    private int CheckpointIntervalTicks;
+    private String PriorMapFile;
+    private boolean OffHeapLandmarks;
+    private boolean MapHistory;
+    private int MapHistoryRetentionTicks;
 
     public static Configuration getInstance(String filePath) {
         if (instance == null) {
@@ -45,6 +59,9 @@ public class Configuration {
                 if (instance.getPoseJsonFile() != null) {
                     instance.setPoseJsonFile(basePath.resolve(instance.getPoseJsonFile()).toString());
                 }
+                if (instance.PriorMapFile != null) {
+                    instance.PriorMapFile = basePath.resolve(instance.PriorMapFile).toString();
+                }
 
             } catch (FileNotFoundException e) {
                 throw new RuntimeException("Configuration file not found: " + filePath, e);
@@ -76,6 +93,131 @@ public class Configuration {
         return Duration;
     }
 
+    /**
+     * @return true if the sensor files are still being written and should be tailed
+     *         (NDJSON, one record per line) instead of being loaded once at startup.
+     */
+    public boolean isTailMode() {
+        return TailMode;
+    }
+
+    /**
+     * @return the batch size from which Fusion-SLAM fuses tracked objects in parallel; 0 for the default.
+     */
+    public int getFusionParallelThreshold() {
+        return FusionParallelThreshold;
+    }
+
+    /**
+     * @return the number of Fusion-SLAM shard services; 0 or 1 fuses on FusionSlamService itself.
+     */
+    public int getFusionShards() {
+        return FusionShards;
+    }
+
+    /**
+     * @return the cell size of the landmark spatial index, or 0 if the index is not maintained.
+     */
+    public double getSpatialIndexCellSize() {
+        return SpatialIndexCellSize;
+    }
+
+    /**
+     * @return true if Fusion-SLAM reports the variance of the observations of every landmark point.
+     */
+    public boolean isLandmarkVarianceTracking() {
+        return LandmarkVarianceTracking;
+    }
+
+    /**
+     * @return "float64" or "float32" to also write the map as {@code output_map.bin}, or null for JSON only.
+     */
+    public String getBinaryMapOutput() {
+        return BinaryMapOutput;
+    }
+
+    /**
+     * @return ticks between map delta records, or 0 if no delta log is written.
+     */
+    public int getMapDeltaIntervalTicks() {
+        return MapDeltaIntervalTicks;
+    }
+
+    /**
+     * @return map delta records between full compactions; 0 for the default.
+     */
+    public int getMapCompactionRecords() {
+        return MapCompactionRecords;
+    }
+
+    /**
+     * @return ticks between checkpoints of the whole run, or 0 for none.
+     */
+    public int getCheckpointIntervalTicks() {
+        return CheckpointIntervalTicks;
+    }
+
+    /**
+     * @return a binary map or output file Fusion-SLAM starts from, or null to start from an empty map.
+     */
+    public String getPriorMapFile() {
+        return PriorMapFile;
+    }
+
+    /**
+     * @return true if Fusion-SLAM keeps landmark points off the Java heap.
+     */
+    public boolean isOffHeapLandmarks() {
+        return OffHeapLandmarks;
+    }
+
+    /**
+     * @return true if Fusion-SLAM keeps a version of the map for every tick.
+     */
+    public boolean isMapHistory() {
+        return MapHistory;
+    }
+
+    /**
+     * @return ticks of map history to keep; 0 keeps the whole run.
+     */
+    public int getMapHistoryRetentionTicks() {
+        return MapHistoryRetentionTicks;
+    }
+
+    /**
+     * @return the maximum number of tracked objects Fusion-SLAM buffers while their pose is missing; 0 for the default.
+     */
+    public int getPendingTrackedObjectsLimit() {
+        return PendingTrackedObjectsLimit;
+    }
+
+    /**
+     * @return how many ticks after detection a buffered tracked object may wait for its pose; 0 for the default.
+     */
+    public int getPendingTrackedObjectsExpiryTicks() {
+        return PendingTrackedObjectsExpiryTicks;
+    }
+
+    /**
+     * The number of ticks Fusion-SLAM keeps poses for, or 0 to keep all of them. Tracked objects arrive
+     * after the camera and LiDAR delays, so the configured window is widened to cover the slowest pair.
+     */
+    public int getPoseRetentionTicks() {
+        if (PoseRetentionTicks <= 0) {
+            return 0;
+        }
+        int slowestCamera = 0;
+        for (CameraConfig cameraConfig : getCameras().getCamerasConfigurations()) {
+            slowestCamera = Math.max(slowestCamera, cameraConfig.getFrequency());
+        }
+        int slowestLidar = 0;
+        for (LidarConfig lidarConfig : getLidarWorkers().getLidarConfigurations()) {
+            slowestLidar = Math.max(slowestLidar, lidarConfig.getFrequency());
+        }
+        return Math.max(PoseRetentionTicks, slowestCamera + slowestLidar + 1);
+    }
+
 
     public void setPoseJsonFile(String poseJsonFile) {
         this.poseJsonFile = poseJsonFile;
@@ -101,6 +243,9 @@ public class Configuration {
     public static class LidarWorkersConfig {
         private List<LidarConfig> LidarConfigurations;
         private String lidars_data_path;
+        private boolean lidars_single_precision;
+        private int lidars_retention_ticks;
+        private double tracked_point_quantum;
 
         public List<LidarConfig> getLidarConfigurations() {
             return LidarConfigurations;
@@ -112,19 +257,59 @@ public class Configuration {
         public void setLidarsDataPath(String lidarsDataPath) {
             this.lidars_data_path = lidarsDataPath;
         }
+
+        /**
+         * @return true if LiDAR points should be stored as float32 instead of float64.
+         */
+        public boolean isSinglePrecision() {
+            return lidars_single_precision;
+        }
+
+        /**
+         * @return how many ticks LiDAR records are kept past a worker's frequency; 0 keeps the whole recording.
+         */
+        public int getRetentionTicks() {
+            return lidars_retention_ticks;
+        }
+
+        /**
+         * @return the precision bound of quantized tracked-object points; 0 sends full points.
+         */
+        public double getTrackedPointQuantum() {
+            return tracked_point_quantum;
+        }
+    }
+
+    /**
+     * The LiDAR retention actually applied: a detection reaches the LiDAR workers only after the
+     * camera's frequency, so the configured window is widened to cover the slowest camera.
+     */
+    public int getLidarRetentionTicks() {
+        int retention = getLidarWorkers().getRetentionTicks();
+        if (retention <= 0) {
+            return 0;
+        }
+        int slowestCamera = 0;
+        for (CameraConfig cameraConfig : getCameras().getCamerasConfigurations()) {
+            slowestCamera = Math.max(slowestCamera, cameraConfig.getFrequency());
+        }
+        return Math.max(retention, slowestCamera + 1);
     }
 
     public void initializeLiDarDataBase() {
         String lidarDataPath = getLidarWorkers().getLidarsDataPath();
-        LiDarDataBase.getInstance().loadLidarData(lidarDataPath);
+        if (lidarDataPath.endsWith(".bin")) {
+            LiDarDataBase.getInstance().loadLidarBinary(lidarDataPath);
+        } else {
+            LiDarDataBase.getInstance().setSinglePrecision(getLidarWorkers().isSinglePrecision());
+            LiDarDataBase.getInstance().loadLidarData(lidarDataPath);
+        }
         System.out.println("LiDar database initialized.");
 
     }
     public List<Pose> loadPoseList() {
-        try (FileReader reader = new FileReader(this.poseJsonFile)) {
-            Gson gson = new Gson();
-            Type poseListType = new TypeToken<List<Pose>>() {}.getType();
-            return gson.fromJson(reader, poseListType);
+        try {
+            return ChunkedJsonArrayParser.parseFile(this.poseJsonFile, SensorTypeAdapters.PoseAdapter::new);
         } catch (Exception e) {
             throw new RuntimeException("Failed to load pose list from file: " + this.poseJsonFile, e);
         }
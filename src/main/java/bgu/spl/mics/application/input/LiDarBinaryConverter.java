@@ -0,0 +1,203 @@
+package bgu.spl.mics.application.input;
+
+import bgu.spl.mics.application.objects.LiDarBinaryFormat;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One-time converter from the JSON LiDAR recording to {@link LiDarBinaryFormat}.
+ * The JSON is streamed, so the recording never has to fit in memory as objects.
+ * <p>
+ * Usage: {@code LiDarBinaryConverter <lidar_data.json> <lidar_data.bin> [float32]}
+ */
+public class LiDarBinaryConverter {
+    private final boolean float32;
+    private final long windowBytes;
+    private final ByteArrayOutputStream indexBytes;
+    private final DataOutputStream index;
+    private final ByteArrayOutputStream stringBytes;
+    private final Map<String, Integer> stringOffsets;
+    private int recordCount;
+    private long pointCount;
+    private int lastTime;
+    private long dataOffset;
+
+    public LiDarBinaryConverter(boolean float32) {
+        this(float32, LiDarBinaryFormat.WINDOW_BYTES);
+    }
+
+    /**
+     * Pads records to windows of {@code windowBytes} instead of {@link LiDarBinaryFormat#WINDOW_BYTES}.
+     * A smaller window only adds padding, so the file still loads; tests use it to exercise the padding.
+     */
+    public LiDarBinaryConverter(boolean float32, long windowBytes) {
+        if (windowBytes <= 0 || LiDarBinaryFormat.WINDOW_BYTES % windowBytes != 0) {
+            throw new IllegalArgumentException("Window size must divide " + LiDarBinaryFormat.WINDOW_BYTES + ": " + windowBytes);
+        }
+        this.float32 = float32;
+        this.windowBytes = windowBytes;
+        this.indexBytes = new ByteArrayOutputStream();
+        this.index = new DataOutputStream(indexBytes);
+        this.stringBytes = new ByteArrayOutputStream();
+        this.stringOffsets = new HashMap<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LiDarBinaryConverter <lidar_data.json> <lidar_data.bin> [float32]");
+            return;
+        }
+        boolean float32 = args.length > 2 && "float32".equals(args[2]);
+        long start = System.nanoTime();
+        new LiDarBinaryConverter(float32).convert(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Converted " + args[0] + " to " + args[1] + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public void convert(Path jsonPath, Path binaryPath) throws IOException {
+        Path dataPath = Files.createTempFile(binaryPath.toAbsolutePath().getParent(), "lidar", ".data");
+        try {
+            try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(jsonPath), StandardCharsets.UTF_8));
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataPath.toFile()), 1 << 16))) {
+                JsonReader json = new JsonReader(reader);
+                json.beginArray();
+                while (json.hasNext()) {
+                    readRecord(json, data);
+                }
+                json.endArray();
+            }
+            writeBinary(binaryPath, dataPath);
+        } finally {
+            Files.deleteIfExists(dataPath);
+        }
+    }
+
+    private void readRecord(JsonReader json, DataOutputStream data) throws IOException {
+        int time = 0;
+        String id = null;
+        ByteArrayOutputStream pointBytes = new ByteArrayOutputStream();
+        DataOutputStream points = new DataOutputStream(pointBytes);
+        int count = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("time".equals(name)) {
+                time = json.nextInt();
+            } else if ("id".equals(name)) {
+                id = json.nextString();
+            } else if ("cloudPoints".equals(name)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    json.beginArray();
+                    double x = json.nextDouble();
+                    double y = json.nextDouble();
+                    while (json.hasNext()) {
+                        json.skipValue(); // z is not used
+                    }
+                    json.endArray();
+                    if (float32) {
+                        points.writeFloat((float) x);
+                        points.writeFloat((float) y);
+                    } else {
+                        points.writeDouble(x);
+                        points.writeDouble(y);
+                    }
+                    count++;
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (id == null) {
+            throw new IOException("LiDAR record without id at time " + time);
+        }
+
+        long size = (long) count * LiDarBinaryFormat.bytesPerPoint(float32);
+        if (size > windowBytes) {
+            throw new IOException("LiDAR record " + id + " at time " + time + " is too large to map");
+        }
+        long windowEnd = (dataOffset / windowBytes + 1) * windowBytes;
+        if (dataOffset + size > windowEnd) {
+            pad(data, windowEnd - dataOffset);
+        }
+
+        index.writeInt(time);
+        index.writeInt(internString(id));
+        index.writeInt(id.getBytes(StandardCharsets.UTF_8).length);
+        index.writeInt(count);
+        index.writeLong(dataOffset);
+        pointBytes.writeTo(data);
+
+        dataOffset += size;
+        pointCount += count;
+        recordCount++;
+        lastTime = Math.max(lastTime, time);
+    }
+
+    private int internString(String id) {
+        Integer offset = stringOffsets.get(id);
+        if (offset == null) {
+            offset = stringBytes.size();
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            stringBytes.write(bytes, 0, bytes.length);
+            stringOffsets.put(id, offset);
+        }
+        return offset;
+    }
+
+    private void pad(DataOutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.writeByte(0);
+        }
+        dataOffset += bytes;
+    }
+
+    private void writeBinary(Path binaryPath, Path dataPath) throws IOException {
+        long metadataBytes = LiDarBinaryFormat.HEADER_BYTES + indexBytes.size() + stringBytes.size();
+        long dataStart = (metadataBytes + LiDarBinaryFormat.DATA_ALIGNMENT - 1)
+                / LiDarBinaryFormat.DATA_ALIGNMENT * LiDarBinaryFormat.DATA_ALIGNMENT;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryPath.toFile()), 1 << 16))) {
+            out.writeInt(LiDarBinaryFormat.MAGIC);
+            out.writeInt(LiDarBinaryFormat.VERSION);
+            out.writeInt(float32 ? LiDarBinaryFormat.FLAG_FLOAT32 : 0);
+            out.writeInt(recordCount);
+            out.writeLong(pointCount);
+            out.writeInt(lastTime);
+            out.writeInt(stringBytes.size());
+            out.writeLong(dataStart);
+            indexBytes.writeTo(out);
+            stringBytes.writeTo(out);
+            for (long i = metadataBytes; i < dataStart; i++) {
+                out.writeByte(0);
+            }
+        }
+
+        try (FileChannel target = FileChannel.open(binaryPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel source = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            long copied = 0;
+            long size = source.size();
+            while (copied < size) {
+                copied += source.transferTo(copied, size - copied, target);
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package bgu.spl.mics.application.input;
 
+import bgu.spl.mics.application.objects.PointDownsampler;
+
 public  class LidarConfig {
     private String id;
     private int frequency;
+    private double downsample_voxel_size;
+    private int downsample_max_points;
 
     public String getId() {
         return id;
@@ -13,5 +17,13 @@ public  class LidarConfig {
         return frequency;
     }
 
+    /**
+     * @return the downsampling stage configured for this worker, or null if it forwards raw points.
+     */
+    public PointDownsampler getDownsampler() {
+        PointDownsampler downsampler = new PointDownsampler(downsample_voxel_size, downsample_max_points);
+        return downsampler.isEnabled() ? downsampler : null;
+    }
+
 
 }
@@ -0,0 +1,196 @@
+package bgu.spl.mics.application.input;
+
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Follows sensor files that are still being written by the capture rig (tail mode).
+ * Every file is read as NDJSON: one record per line, parsed only once, starting from
+ * the offset where the previous poll stopped. A trailing line without a newline is kept
+ * until the writer completes it.
+ * <p>
+ * Record framing per file:
+ * <ul>
+ *     <li>LiDAR: {@code {"time":..,"id":..,"cloudPoints":[[x,y],..]}}</li>
+ *     <li>Camera: {@code {"<camera_key>":{"time":..,"detectedObjects":[..]}}}</li>
+ *     <li>Pose: {@code {"time":..,"x":..,"y":..,"yaw":..}}</li>
+ * </ul>
+ */
+public class SensorFileTailer implements Runnable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private final List<TailedFile> files;
+    private volatile boolean running;
+
+    public SensorFileTailer() {
+        this.files = new CopyOnWriteArrayList<>();
+        this.running = true;
+    }
+
+    public void watchLidarData(String filePath, LiDarDataBase dataBase) {
+        SensorTypeAdapters.StampedCloudPointsAdapter adapter =
+                new SensorTypeAdapters.StampedCloudPointsAdapter(dataBase.getPointStore());
+        files.add(new TailedFile(Paths.get(filePath), reader -> dataBase.addRecord(adapter.read(reader))));
+    }
+
+    public void watchCameraData(String filePath, Map<String, Camera> camerasByKey) {
+        SensorTypeAdapters.StampedDetectedObjectsAdapter adapter = new SensorTypeAdapters.StampedDetectedObjectsAdapter();
+        files.add(new TailedFile(Paths.get(filePath), reader -> {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Camera camera = camerasByKey.get(reader.nextName());
+                if (camera != null) {
+                    camera.addDetectedObject(adapter.read(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }));
+    }
+
+    public void watchPoseData(String filePath, GPSIMU gpsimu) {
+        SensorTypeAdapters.PoseAdapter adapter = new SensorTypeAdapters.PoseAdapter();
+        files.add(new TailedFile(Paths.get(filePath), reader -> gpsimu.addPose(adapter.read(reader))));
+    }
+
+    /**
+     * Reads whatever was appended to the watched files since the last poll.
+     *
+     * @return the number of records published.
+     */
+    public int pollOnce() {
+        int published = 0;
+        for (TailedFile file : files) {
+            try {
+                published += file.poll();
+            } catch (IOException e) {
+                System.err.println("SensorFileTailer: Failed reading " + file.path + ": " + e.getMessage());
+            }
+        }
+        return published;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                if (pollOnce() == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } finally {
+            for (TailedFile file : files) {
+                file.close();
+            }
+        }
+    }
+
+    private interface RecordHandler {
+        void handle(JsonReader reader) throws IOException;
+    }
+
+    private static class TailedFile {
+        private final Path path;
+        private final RecordHandler handler;
+        private final ByteArrayOutputStream partialLine;
+        private final ByteBuffer buffer;
+        private FileChannel channel;
+        private long offset;
+
+        TailedFile(Path path, RecordHandler handler) {
+            this.path = path;
+            this.handler = handler;
+            this.partialLine = new ByteArrayOutputStream();
+            this.buffer = ByteBuffer.allocate(READ_CHUNK);
+            this.offset = 0;
+        }
+
+        int poll() throws IOException {
+            if (channel == null) {
+                if (!Files.exists(path)) {
+                    return 0;
+                }
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            if (channel.size() < offset) {
+                System.err.println("SensorFileTailer: " + path + " was truncated, reading it from the start.");
+                offset = 0;
+                partialLine.reset();
+            }
+
+            int published = 0;
+            while (offset < channel.size()) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                offset += read;
+                published += consume(buffer.array(), read);
+            }
+            return published;
+        }
+
+        private int consume(byte[] bytes, int length) {
+            int published = 0;
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    partialLine.write(bytes, lineStart, i - lineStart);
+                    String line = new String(partialLine.toByteArray(), StandardCharsets.UTF_8).trim();
+                    partialLine.reset();
+                    lineStart = i + 1;
+                    if (!line.isEmpty() && publish(line)) {
+                        published++;
+                    }
+                }
+            }
+            partialLine.write(bytes, lineStart, length - lineStart);
+            return published;
+        }
+
+        private boolean publish(String line) {
+            try {
+                handler.handle(new JsonReader(new StringReader(line)));
+                return true;
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                System.err.println("SensorFileTailer: Skipping malformed record in " + path + ": " + e.getMessage());
+                return false;
+            }
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
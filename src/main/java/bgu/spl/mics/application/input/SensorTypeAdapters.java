@@ -0,0 +1,221 @@
+package bgu.spl.mics.application.input;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.CloudPointStore;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hand-written Gson adapters for the sensor input files.
+ * They read the known fields straight from the token stream, without reflection and
+ * without boxing coordinates, and skip any field they do not know.
+ */
+public final class SensorTypeAdapters {
+
+    private SensorTypeAdapters() {
+    }
+
+    /**
+     * Reads {@code {"time":..,"id":..,"cloudPoints":[[x,y(,z)],..]}} into a {@link CloudPointStore}.
+     * Not thread safe: use one instance per parsing thread.
+     */
+    public static class StampedCloudPointsAdapter extends TypeAdapter<StampedCloudPoints> {
+        private final CloudPointStore store;
+        private double[] xs = new double[256];
+        private double[] ys = new double[256];
+
+        public StampedCloudPointsAdapter(CloudPointStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public StampedCloudPoints read(JsonReader in) throws IOException {
+            int time = 0;
+            String id = null;
+            int count = 0;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "time":
+                        time = (int) in.nextDouble();
+                        break;
+                    case "id":
+                        id = in.nextString();
+                        break;
+                    case "cloudPoints":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            if (count == xs.length) {
+                                xs = Arrays.copyOf(xs, count * 2);
+                                ys = Arrays.copyOf(ys, count * 2);
+                            }
+                            in.beginArray();
+                            xs[count] = in.nextDouble();
+                            ys[count] = in.nextDouble();
+                            while (in.hasNext()) {
+                                in.skipValue();
+                            }
+                            in.endArray();
+                            count++;
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new StampedCloudPoints(id, time, store.append(xs, ys, count));
+        }
+
+        @Override
+        public void write(JsonWriter out, StampedCloudPoints value) throws IOException {
+            out.beginObject();
+            out.name("time").value(value.getTime());
+            out.name("id").value(value.getId());
+            out.name("cloudPoints").beginArray();
+            List<CloudPoint> points = value.getCloudPoints();
+            for (int i = 0; i < points.size(); i++) {
+                CloudPoint point = points.get(i);
+                out.beginArray().value(point.getX()).value(point.getY()).endArray();
+            }
+            out.endArray();
+            out.endObject();
+        }
+    }
+
+    public static class DetectedObjectAdapter extends TypeAdapter<DetectedObject> {
+        @Override
+        public DetectedObject read(JsonReader in) throws IOException {
+            String id = null;
+            String description = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        id = in.nextString();
+                        break;
+                    case "description":
+                        description = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new DetectedObject(id, description);
+        }
+
+        @Override
+        public void write(JsonWriter out, DetectedObject value) throws IOException {
+            out.beginObject();
+            out.name("id").value(value.getId());
+            out.name("description").value(value.getDescription());
+            out.endObject();
+        }
+    }
+
+    public static class StampedDetectedObjectsAdapter extends TypeAdapter<StampedDetectedObjects> {
+        private final DetectedObjectAdapter detectedObjectAdapter = new DetectedObjectAdapter();
+
+        @Override
+        public StampedDetectedObjects read(JsonReader in) throws IOException {
+            int time = 0;
+            List<DetectedObject> detectedObjects = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "time":
+                        time = (int) in.nextDouble();
+                        break;
+                    case "detectedObjects":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            detectedObjects.add(detectedObjectAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new StampedDetectedObjects(time, detectedObjects);
+        }
+
+        @Override
+        public void write(JsonWriter out, StampedDetectedObjects value) throws IOException {
+            out.beginObject();
+            out.name("time").value(value.getTime());
+            out.name("detectedObjects").beginArray();
+            for (DetectedObject detectedObject : value.getDetectedObjects()) {
+                detectedObjectAdapter.write(out, detectedObject);
+            }
+            out.endArray();
+            out.endObject();
+        }
+    }
+
+    public static class PoseAdapter extends TypeAdapter<Pose> {
+        @Override
+        public Pose read(JsonReader in) throws IOException {
+            float x = 0;
+            float y = 0;
+            float yaw = 0;
+            int time = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "x":
+                        x = (float) in.nextDouble();
+                        break;
+                    case "y":
+                        y = (float) in.nextDouble();
+                        break;
+                    case "yaw":
+                        yaw = (float) in.nextDouble();
+                        break;
+                    case "time":
+                        time = (int) in.nextDouble();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Pose(x, y, yaw, time);
+        }
+
+        @Override
+        public void write(JsonWriter out, Pose value) throws IOException {
+            out.beginObject();
+            out.name("time").value(value.getTime());
+            out.name("x").value(value.getX());
+            out.name("y").value(value.getY());
+            out.name("yaw").value(value.getYaw());
+            out.endObject();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package bgu.spl.mics.application.input;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Collects how long each startup phase took. Phases may be timed from several threads;
+ * they are printed in the order in which they were started.
+ */
+public class StartupReport {
+    private final Map<String, Long> phaseNanos;
+    private final AtomicInteger order;
+    private final long start;
+
+    public StartupReport() {
+        this.phaseNanos = new ConcurrentSkipListMap<>();
+        this.order = new AtomicInteger();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Runs {@code phase} and records its wall-clock duration under {@code name}.
+     */
+    public <T> T time(String name, Supplier<T> phase) {
+        String key = String.format("%02d %s", order.getAndIncrement(), name);
+        long phaseStart = System.nanoTime();
+        try {
+            return phase.get();
+        } finally {
+            phaseNanos.put(key, System.nanoTime() - phaseStart);
+        }
+    }
+
+    public void print() {
+        StringBuilder report = new StringBuilder("Startup report:");
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            report.append(String.format("%n  %-24s %8.1f ms", entry.getKey().substring(3), entry.getValue() / 1e6));
+        }
+        report.append(String.format("%n  %-24s %8.1f ms", "total", (System.nanoTime() - start) / 1e6));
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,30 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.application.objects.TrackedObject;
+import java.util.List;
+
+/**
+ * The part of a {@link TrackedObjectsEvent} whose objects belong to one Fusion-SLAM shard.
+ * Sent by FusionSlamService directly to that shard's service.
+ */
+public class FusionShardEvent implements Event<Void> {
+    private final int time;
+    private final List<TrackedObject> trackedObjects;
+
+    public FusionShardEvent(int time, List<TrackedObject> trackedObjects) {
+        if (trackedObjects == null) {
+            throw new IllegalArgumentException("Tracked objects list cannot be null");
+        }
+        this.time = time;
+        this.trackedObjects = trackedObjects;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public List<TrackedObject> getTrackedObjects() {
+        return trackedObjects;
+    }
+}
@@ -2,28 +2,32 @@ package bgu.spl.mics.application.objects;
 
 import bgu.spl.mics.application.messages.DetectObjectsEvent;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a camera sensor on the robot.
  * Responsible for detecting objects in the environment.
+ * <p>
+ * Detections are kept by time, so the service finds a tick's detections in O(1) while the tail
+ * reader keeps adding new ones.
  */
 public class Camera {
     private final String id;
     private int frequency;
     private STATUS status;
-    private List<StampedDetectedObjects> detectedObjectsList;
+    private final Map<Integer, StampedDetectedObjects> detectedObjectsByTime;
+    private volatile int lastDetectionTime;
     private final Map<Integer, StampedDetectedObjects> eventLog;
+    private volatile boolean live;
 
     public Camera(String id, int frequency) {
         this.id = id;
         this.frequency = frequency;
         this.status = STATUS.UP;
-        this.detectedObjectsList = new ArrayList<>();
+        this.detectedObjectsByTime = new ConcurrentHashMap<>();
+        this.lastDetectionTime = -1;
         eventLog= new ConcurrentHashMap<>();
     }
 
@@ -36,21 +40,12 @@ public class Camera {
     }
 
     public StampedDetectedObjects getObjectsAtTime(int currentTime) {
-        for (StampedDetectedObjects sDetectedObjects : detectedObjectsList) {
-            if (sDetectedObjects.getTime() == currentTime) {
-                return sDetectedObjects;
-            }
-        }
-        return null;
+        return detectedObjectsByTime.get(currentTime);
     }
 
     public List<DetectedObject> getDetectedObjectsAtTime(int currentTime) {
-        for (StampedDetectedObjects sDetectedObjects : detectedObjectsList) {
-            if (sDetectedObjects.getTime() == currentTime) {
-                return sDetectedObjects.getDetectedObjects();
-            }
-        }
-        return null;
+        StampedDetectedObjects sDetectedObjects = detectedObjectsByTime.get(currentTime);
+        return sDetectedObjects == null ? null : sDetectedObjects.getDetectedObjects();
     }
 
     public Map<Integer, StampedDetectedObjects> getEventLog() {
@@ -70,7 +65,7 @@ public class Camera {
         List<DetectedObject> detectedObjects = getDetectedObjectsAtTime(currentTime);
         if (detectedObjects != null) {
             for (DetectedObject object : detectedObjects) {
-                if ("ERROR".equals(object.getId())) {
+                if (object.getSymbol() == ObjectIds.ERROR) {
                     return object.getDescription();
                 }
             }
@@ -78,12 +73,37 @@ public class Camera {
         return null;
     }
 
+    /**
+     * Marks the camera as fed by a file that is still being written.
+     * A live camera never terminates on its own; the simulation duration ends it.
+     */
+    public void setLive(boolean live) {
+        this.live = live;
+    }
+
     public boolean shouldTerminateAtTime(int currentTime) {
-        int last = detectedObjectsList.get(detectedObjectsList.size() - 1).getTime() + frequency;
+        if (live) {
+            return false;
+        }
+        int last = lastDetectionTime + frequency;
         return currentTime > last;
     }
 
+    /**
+     * Adds the detections of one time; a later record for a time already seen is ignored.
+     * Called by a single thread (the startup load or the tail reader).
+     */
     public void addDetectedObject(StampedDetectedObjects stampedObject) {
-        detectedObjectsList.add(stampedObject);
+        int time = stampedObject.getTime();
+        detectedObjectsByTime.putIfAbsent(time, stampedObject);
+        if (time > lastDetectionTime) {
+            lastDetectionTime = time;
+        }
+    }
+
+    public void addDetectedObjects(List<StampedDetectedObjects> stampedObjects) {
+        for (StampedDetectedObjects stampedObject : stampedObjects) {
+            addDetectedObject(stampedObject);
+        }
     }
 }
@@ -0,0 +1,198 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes periodic {@link SimulationCheckpoint}s and hands a loaded one to the objects that resume from it.
+ * <p>
+ * The TimeService cuts a checkpoint between two ticks, before it sends the next one, once the message
+ * bus is idle: every service has handled the previous tick and every event it caused, so the
+ * participants' states agree with each other and no event is in flight (detections and tracked
+ * objects held back for later ticks are part of the participants' state). If the bus does not go idle
+ * in time the checkpoint is {@link #postpone(int) postponed} to the next tick. Participants copy their
+ * state on the TimeService thread; the copy is serialized and written on a background thread, so the
+ * next tick is only delayed by the copy.
+ */
+public class CheckpointManager {
+
+    /**
+     * Something whose state is part of a checkpoint.
+     */
+    public interface Participant {
+        /**
+         * Copies this participant's state into {@code checkpoint}. Called between ticks.
+         */
+        void saveCheckpoint(SimulationCheckpoint checkpoint);
+
+        /**
+         * Takes this participant's state from {@code checkpoint}, before the resumed run starts ticking.
+         */
+        void restoreCheckpoint(SimulationCheckpoint checkpoint);
+    }
+
+    private final List<Participant> participants;
+    private final AtomicLong checkpoints;
+    private final AtomicLong pauseNanos;
+    private final AtomicLong writeNanos;
+    private volatile Path path;
+    private volatile int intervalTicks;
+    private volatile SimulationCheckpoint resumeFrom;
+    private volatile boolean postponed;
+    private ExecutorService writer;
+
+    private static class SingletonHolder {
+        private static final CheckpointManager instance = new CheckpointManager();
+    }
+
+    private CheckpointManager() {
+        this.participants = new CopyOnWriteArrayList<>();
+        this.checkpoints = new AtomicLong();
+        this.pauseNanos = new AtomicLong();
+        this.writeNanos = new AtomicLong();
+    }
+
+    public static CheckpointManager getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    /**
+     * Writes a checkpoint to {@code path} every {@code intervalTicks} ticks; 0 disables checkpoints.
+     */
+    public synchronized void configure(Path path, int intervalTicks) {
+        this.path = path;
+        this.intervalTicks = intervalTicks;
+        if (intervalTicks > 0 && writer == null) {
+            writer = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "CheckpointWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Makes participants registered from now on restore their state from {@code checkpoint}.
+     */
+    public void resumeFrom(SimulationCheckpoint checkpoint) {
+        this.resumeFrom = checkpoint;
+        StatisticalFolder.getInstance().restore(checkpoint.getSystemRuntime(), checkpoint.getNumDetectedObjects(),
+                checkpoint.getNumTrackedObjects(), checkpoint.getNumLandmarks());
+    }
+
+    /**
+     * @return the checkpoint the run resumes from, or null for a fresh run.
+     */
+    public SimulationCheckpoint getResumeCheckpoint() {
+        return resumeFrom;
+    }
+
+    /**
+     * Adds {@code participant} to future checkpoints and, on a resumed run, restores it right away.
+     */
+    public void register(Participant participant) {
+        SimulationCheckpoint checkpoint = resumeFrom;
+        if (checkpoint != null) {
+            participant.restoreCheckpoint(checkpoint);
+        }
+        participants.add(participant);
+    }
+
+    public void unregister(Participant participant) {
+        participants.remove(participant);
+    }
+
+    /**
+     * @return true if a checkpoint should be cut before sending {@code tick}.
+     */
+    public boolean isDue(int tick) {
+        int interval = intervalTicks;
+        SimulationCheckpoint resumed = resumeFrom;
+        return interval > 0 && tick > 0 && (postponed || tick % interval == 0) && (resumed == null || tick > resumed.getTick());
+    }
+
+    /**
+     * Makes the checkpoint due before {@code tick} due again before the next tick, because the
+     * services were still busy.
+     */
+    public void postpone(int tick) {
+        postponed = true;
+        System.err.println("CheckpointManager: Services still busy before tick " + tick + "; checkpoint postponed.");
+    }
+
+    /**
+     * Copies the state of every participant and queues the checkpoint for writing. A participant that
+     * fails to copy its state only costs this checkpoint.
+     *
+     * @return true if the checkpoint was queued for writing.
+     */
+    public boolean checkpoint(int tick) {
+        postponed = false;
+        long start = System.nanoTime();
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(tick);
+        try {
+            for (Participant participant : participants) {
+                participant.saveCheckpoint(checkpoint);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("CheckpointManager: Could not copy the state for the checkpoint before tick " + tick + ": " + e);
+            return false;
+        }
+        StatisticalFolder statistics = StatisticalFolder.getInstance();
+        checkpoint.setStatistics(statistics.getSystemRuntime(), statistics.getNumDetectedObjects(),
+                statistics.getNumTrackedObjects(), statistics.getNumLandmarks());
+        long copied = System.nanoTime();
+        pauseNanos.addAndGet(copied - start);
+
+        Path target = path;
+        ExecutorService executor;
+        synchronized (this) {
+            executor = writer;
+        }
+        if (executor == null) {
+            System.err.println("CheckpointManager: Checkpoint before tick " + tick + " cut after writing stopped; not written.");
+            return false;
+        }
+        executor.execute(() -> {
+            long writeStart = System.nanoTime();
+            try {
+                checkpoint.write(target);
+                writeNanos.addAndGet(System.nanoTime() - writeStart);
+                checkpoints.incrementAndGet();
+                System.out.println("CheckpointManager: Checkpoint before tick " + tick + " written ("
+                        + (copied - start) / 1_000 + " us copy, " + (System.nanoTime() - writeStart) / 1_000_000 + " ms write).");
+            } catch (IOException e) {
+                System.err.println("CheckpointManager: Could not write checkpoint before tick " + tick + ": " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Waits for queued checkpoints to be written.
+     */
+    public void awaitWrites() throws InterruptedException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = writer;
+            writer = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public String report() {
+        long count = checkpoints.get();
+        return "checkpoints=" + count
+                + (count == 0 ? "" : " avgCopy=" + pauseNanos.get() / count / 1_000 + "us avgWrite="
+                + writeNanos.get() / count / 1_000_000 + "ms");
+    }
+}
@@ -0,0 +1,29 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view over a run of points kept in primitive storage.
+ * Coordinates can be read directly through {@link #getX(int)} and {@link #getY(int)};
+ * {@link #get(int)} materializes a {@link CloudPoint} only for callers that need one.
+ */
+public abstract class CloudPointSlice extends AbstractList<CloudPoint> implements RandomAccess {
+
+    public abstract double getX(int index);
+
+    public abstract double getY(int index);
+
+    /**
+     * @return the number of bytes the backing storage uses for a single point.
+     */
+    public abstract int bytesPerPoint();
+
+    @Override
+    public CloudPoint get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return new CloudPoint(getX(index), getY(index));
+    }
+}
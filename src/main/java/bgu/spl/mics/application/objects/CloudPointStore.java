@@ -0,0 +1,170 @@
+package bgu.spl.mics.application.objects;
+
+/**
+ * Columnar storage for LiDAR points.
+ * Points are appended into contiguous x and y pages (double or float precision) and handed out
+ * as {@link CloudPointSlice} views of (page, offset, length). A page is freed by the garbage
+ * collector once no slice refers to it anymore.
+ */
+public class CloudPointStore {
+    static final int PAGE_POINTS = 64 * 1024;
+
+    // Retained size of one point in the object layout: a CloudPoint (12 B header + 2 doubles,
+    // padded to 32 B) plus its reference in the ArrayList backing array (4 B with compressed oops).
+    static final int OBJECT_LAYOUT_BYTES_PER_POINT = 36;
+
+    private final boolean singlePrecision;
+    private double[] doubleXs;
+    private double[] doubleYs;
+    private float[] floatXs;
+    private float[] floatYs;
+    private int pageUsed;
+    private int pageCapacity;
+    private long pointCount;
+    private long allocatedBytes;
+
+    public CloudPointStore(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+        this.pageUsed = 0;
+        this.pageCapacity = 0;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Copies {@code count} points into the store.
+     *
+     * @return a view over the stored points.
+     */
+    public synchronized CloudPointSlice append(double[] xs, double[] ys, int count) {
+        if (pageCapacity == 0 || pageCapacity - pageUsed < count) {
+            newPage(Math.max(PAGE_POINTS, count));
+        }
+        int offset = pageUsed;
+        CloudPointSlice slice;
+        if (singlePrecision) {
+            for (int i = 0; i < count; i++) {
+                floatXs[offset + i] = (float) xs[i];
+                floatYs[offset + i] = (float) ys[i];
+            }
+            slice = new FloatSlice(floatXs, floatYs, offset, count);
+        } else {
+            System.arraycopy(xs, 0, doubleXs, offset, count);
+            System.arraycopy(ys, 0, doubleYs, offset, count);
+            slice = new DoubleSlice(doubleXs, doubleYs, offset, count);
+        }
+        pageUsed += count;
+        pointCount += count;
+        return slice;
+    }
+
+    private void newPage(int capacity) {
+        if (singlePrecision) {
+            floatXs = new float[capacity];
+            floatYs = new float[capacity];
+        } else {
+            doubleXs = new double[capacity];
+            doubleYs = new double[capacity];
+        }
+        pageUsed = 0;
+        pageCapacity = capacity;
+        allocatedBytes += (long) capacity * bytesPerPoint();
+    }
+
+    public int bytesPerPoint() {
+        return singlePrecision ? 2 * Float.BYTES : 2 * Double.BYTES;
+    }
+
+    public synchronized long getPointCount() {
+        return pointCount;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return a short comparison of the memory used per point by this store and by the object layout.
+     */
+    public synchronized String footprintReport() {
+        double allocatedPerPoint = pointCount == 0 ? 0 : (double) allocatedBytes / pointCount;
+        return String.format("%d points: columnar %s %d B/point (%.1f B/point allocated, %d KB), object layout ~%d B/point (~%d KB)",
+                pointCount,
+                singlePrecision ? "float32" : "float64",
+                bytesPerPoint(),
+                allocatedPerPoint,
+                allocatedBytes / 1024,
+                OBJECT_LAYOUT_BYTES_PER_POINT,
+                pointCount * OBJECT_LAYOUT_BYTES_PER_POINT / 1024);
+    }
+
+    private static final class DoubleSlice extends CloudPointSlice {
+        private final double[] xs;
+        private final double[] ys;
+        private final int offset;
+        private final int length;
+
+        DoubleSlice(double[] xs, double[] ys, int offset, int length) {
+            this.xs = xs;
+            this.ys = ys;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public double getX(int index) {
+            return xs[offset + index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return ys[offset + index];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public int bytesPerPoint() {
+            return 2 * Double.BYTES;
+        }
+    }
+
+    private static final class FloatSlice extends CloudPointSlice {
+        private final float[] xs;
+        private final float[] ys;
+        private final int offset;
+        private final int length;
+
+        FloatSlice(float[] xs, float[] ys, int offset, int length) {
+            this.xs = xs;
+            this.ys = ys;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public double getX(int index) {
+            return xs[offset + index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return ys[offset + index];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public int bytesPerPoint() {
+            return 2 * Float.BYTES;
+        }
+    }
+}
@@ -10,16 +10,28 @@ import java.util.concurrent.ConcurrentHashMap;
 public class DetectedObject {
     private String id;
     private String description;
+    private transient int symbol;
 
     public DetectedObject(String id,String description) {
         this.id = id;
         this.description=description;
+        this.symbol = ObjectIds.intern(id);
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * @return the interned {@link ObjectIds} symbol of the id.
+     */
+    public int getSymbol() {
+        if (symbol == ObjectIds.NONE) {
+            symbol = ObjectIds.intern(id);
+        }
+        return symbol;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -31,5 +43,6 @@ public class DetectedObject {
 
     public void setId(String id) {
         this.id = id;
+        this.symbol = ObjectIds.intern(id);
     }
 }
@@ -1,10 +1,11 @@
 package bgu.spl.mics.application.objects;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import java.util.concurrent.atomic.AtomicInteger;
-import com.google.gson.Gson;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,24 +15,57 @@ import java.nio.file.Paths;
  * Combines data from multiple sensors (e.g., LiDAR, camera) to build and update a global map.
  * Implements the Singleton pattern to ensure a single instance of FusionSlam exists.
  */
-public class FusionSlam {
-    private static List<LandMark> landmarkList;
-    private static List<Pose> poseList;
+public class FusionSlam implements CheckpointManager.Participant {
+    private static LandmarkStore landmarkList;
+    private static PoseTimeline poseTimeline;
+    // written under this object's lock by drainPoseRing; read without it by getPoseByTime
+    private volatile int poseRingDrainedThrough = -1;
+    private final PendingTrackedObjects pendingTrackedObjects;
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 64;
+    private static final int LOCK_STRIPES = 64;
+    private static final ThreadLocal<TransformKernel> transformKernels = ThreadLocal.withInitial(TransformKernel::new);
+    private final Object[] landmarkLocks;
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile boolean varianceTracking;
+    private volatile boolean binaryMapOutput;
+    private volatile boolean binaryMapFloat32;
+    private volatile LandmarkSpatialIndex spatialIndex;
+    private volatile MapDeltaLog mapDeltaLog;
+    private volatile PriorLandmarkMap priorMap;
+    private volatile LandmarkHistory history;
     private final AtomicInteger serviceCount;
     private static volatile boolean outputFileCreated;
+    private volatile Thread outputThread;
     private final int duration;
     private final String configFilePath;
 
     FusionSlam(int initialServiceCount, int duration,String configFilePath) {
-        landmarkList = new ArrayList<>();
-        poseList = new ArrayList<>();
+        landmarkList = new LandmarkRegistry();
+        poseTimeline = new PoseTimeline();
+        this.pendingTrackedObjects = new PendingTrackedObjects();
+        this.landmarkLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            landmarkLocks[i] = new Object();
+        }
         this.serviceCount = new AtomicInteger(initialServiceCount);
         outputFileCreated = false;
         this.duration = duration;
         this.configFilePath=configFilePath;
     }
 
+    /**
+     * Keeps the landmarks in an {@link OffHeapLandmarkStore} instead of on the heap. Landmarks read through
+     * this class are then copies. Must be called before any landmark is added.
+     */
+    public void useOffHeapLandmarkStore() {
+        landmarkList = new OffHeapLandmarkStore();
+    }
+
+    /**
+     * @return the landmarks in the order they were added. Safe to read while FusionSlamService updates it.
+     */
     public List<LandMark> getLandMarks() {
+        loadPriorLandmarks();
         return landmarkList;
     }
 
@@ -52,61 +86,506 @@ public class FusionSlam {
 
     public void addLandmark(LandMark landmark) {
         landmarkList.add(landmark);
+        LandmarkSpatialIndex index = spatialIndex;
+        if (index != null) {
+            index.update(landmark);
+        }
+        MapDeltaLog deltaLog = mapDeltaLog;
+        if (deltaLog != null) {
+            deltaLog.markDirty(landmark);
+        }
+        LandmarkHistory versions = history;
+        if (versions != null) {
+            versions.markDirty(landmark.getSymbol());
+        }
     }
 
-    public void addPose(Pose pose) {
-        poseList.add(pose);
+    /**
+     * Starts from the map saved in {@code path} (a binary map or a JSON output file) instead of an empty one.
+     * Its landmarks count towards the statistics right away but are only registered when first observed
+     * or looked up, or all at once when the whole map is needed (output, checkpoint, spatial index, delta log).
+     * Must be called before the run starts.
+     */
+    public void loadPriorMap(Path path) throws IOException {
+        long start = System.nanoTime();
+        PriorLandmarkMap prior = PriorLandmarkMap.open(path);
+        StatisticalFolder.getInstance().incrementNumLandmarks(prior.size());
+        priorMap = prior;
+        System.out.println("FusionSlam: Opened prior map " + path + " with " + prior.size() + " landmarks ("
+                + (prior.isMemoryMapped() ? "memory-mapped" : "parsed") + ") in " + (System.nanoTime() - start) / 1_000 + " us.");
+        if (spatialIndex != null || mapDeltaLog != null) {
+            loadPriorLandmarks();
+        }
     }
 
-    public Pose getPoseByTime(int timestamp) {
-        for (Pose pose : poseList) {
-            if (pose.getTime() == timestamp) {
-                return pose;
+    /**
+     * Registers the prior landmark with {@code id}, if there is one that is not registered yet.
+     *
+     * @return the registered landmark with {@code id}, or null.
+     */
+    private LandMark loadPriorLandmark(String id) {
+        PriorLandmarkMap prior = priorMap;
+        if (prior == null) {
+            return null;
+        }
+        int position = prior.indexOf(id);
+        return position < 0 ? null : registerPriorLandmark(prior.load(position));
+    }
+
+    /**
+     * Registers every prior landmark not registered yet, in the order of the prior map.
+     */
+    private void loadPriorLandmarks() {
+        PriorLandmarkMap prior = priorMap;
+        if (prior == null) {
+            return;
+        }
+        synchronized (prior) {
+            if (priorMap == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < prior.size(); i++) {
+                if (findLandmarkBySymbol(ObjectIds.intern(prior.getId(i))) == null) {
+                    registerPriorLandmark(prior.load(i));
+                }
             }
+            priorMap = null;
+            System.out.println("FusionSlam: Loaded the rest of the prior map in " + (System.nanoTime() - start) / 1_000 + " us.");
         }
-        return null;
     }
 
-    public LandMark findLandmarkById(String id) {
+    private LandMark registerPriorLandmark(LandMark landmark) {
+        if (varianceTracking) {
+            landmark.enableVarianceTracking();
+        }
+        LandMark existing = landmarkList.putIfAbsent(landmark);
+        if (existing != null) {
+            return existing;
+        }
+        LandmarkSpatialIndex index = spatialIndex;
+        if (index != null) {
+            index.update(landmark);
+        }
+        MapDeltaLog deltaLog = mapDeltaLog;
+        if (deltaLog != null) {
+            deltaLog.markDirty(landmark);
+        }
+        LandmarkHistory versions = history;
+        if (versions != null) {
+            versions.markDirty(landmark.getSymbol());
+        }
+        return landmark;
+    }
+
+    /**
+     * Starts recording changed landmarks to {@code map_delta.log} next to the output file.
+     * Landmarks mapped so far go into the first record.
+     *
+     * @param intervalTicks     ticks between records.
+     * @param compactionRecords records between full compactions; 0 for the default.
+     */
+    public void enableMapDeltaLog(int intervalTicks, int compactionRecords) {
+        if (!landmarkList.holdsLandmarks()) {
+            System.err.println("FusionSlam: The map delta log needs landmark objects; not available with the off-heap landmark store.");
+            return;
+        }
+        loadPriorLandmarks();
+        try {
+            MapDeltaLog deltaLog = new MapDeltaLog(Paths.get(getMapDeltaLogPath()), intervalTicks, compactionRecords);
+            for (LandMark landmark : landmarkList) {
+                deltaLog.markDirty(landmark);
+            }
+            mapDeltaLog = deltaLog;
+        } catch (IOException e) {
+            System.err.println("FusionSlam: Could not open the map delta log: " + e.getMessage());
+        }
+    }
+
+    public MapDeltaLog getMapDeltaLog() {
+        return mapDeltaLog;
+    }
+
+    /**
+     * Writes a map delta record if one is due at {@code tick}; called on every tick.
+     */
+    public void recordMapDelta(int tick) {
+        MapDeltaLog deltaLog = mapDeltaLog;
+        if (deltaLog != null && deltaLog.isDue(tick)) {
+            appendMapDelta(deltaLog, tick);
+        }
+    }
+
+    private void appendMapDelta(MapDeltaLog deltaLog, int tick) {
+        boolean full = deltaLog.isCompactionDue();
+        List<LandMark> changed = deltaLog.drainDirty();
+        List<LandMark> landmarks = full ? new ArrayList<>(landmarkList) : changed;
+        List<LandMark> copies = new ArrayList<>(landmarks.size());
+        for (LandMark landmark : landmarks) {
+            synchronized (landmarkLocks[landmark.getSymbol() & (LOCK_STRIPES - 1)]) {
+                copies.add(landmark.copy());
+            }
+        }
+        deltaLog.append(tick, copies, full, StatisticalFolder.getInstance());
+    }
+
+    /**
+     * Writes the changes since the last record and closes the log, so it ends with the final map.
+     */
+    private void closeMapDeltaLog() {
+        MapDeltaLog deltaLog = mapDeltaLog;
+        if (deltaLog == null) {
+            return;
+        }
+        mapDeltaLog = null;
+        appendMapDelta(deltaLog, deltaLog.getLastSeenTick());
+        try {
+            deltaLog.close();
+        } catch (IOException e) {
+            System.err.println("FusionSlam: Could not complete the map delta log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts keeping a {@link LandmarkHistory} of the map, recorded on every tick. Landmarks mapped so far
+     * are recorded at the next tick.
+     *
+     * @param retentionTicks ticks of history to keep; 0 keeps the whole run.
+     */
+    public void enableHistory(int retentionTicks) {
+        LandmarkHistory versions = new LandmarkHistory(retentionTicks);
+        for (int i = 0; i < landmarkList.size(); i++) {
+            versions.markDirty(landmarkList.get(i).getSymbol());
+        }
+        history = versions;
+    }
+
+    /**
+     * Records the landmarks changed since the last tick in the history, if it is enabled; called on every tick.
+     */
+    public void recordHistory(int tick) {
+        LandmarkHistory versions = history;
+        if (versions == null) {
+            return;
+        }
+        int[] changed = versions.drainDirty();
+        List<LandMark> copies = new ArrayList<>(changed.length);
+        for (int symbol : changed) {
+            synchronized (landmarkLocks[symbol & (LOCK_STRIPES - 1)]) {
+                LandMark landmark = landmarkList.getBySymbol(symbol);
+                if (landmark != null) {
+                    copies.add(landmarkList.holdsLandmarks() ? landmark.copy() : landmark);
+                }
+            }
+        }
+        versions.record(tick, copies);
+    }
+
+    /**
+     * @return the landmarks as they were at {@code tick}, without waiting for Fusion-SLAM.
+     */
+    public List<LandMark> getLandmarksAt(int tick) {
+        return requireHistory().getLandmarksAt(tick);
+    }
+
+    /**
+     * @return the recorded versions of the landmark with {@code id}, oldest first.
+     */
+    public List<LandmarkHistory.Version> getLandmarkHistory(String id) {
+        return requireHistory().getLandmarkHistory(id);
+    }
+
+    private LandmarkHistory requireHistory() {
+        LandmarkHistory versions = history;
+        if (versions == null) {
+            throw new IllegalStateException("The landmark history is not enabled");
+        }
+        return versions;
+    }
+
+    /**
+     * Copies the landmarks (each under its stripe lock), the poses and the tracked objects awaiting a pose.
+     * A store that does not hold landmark objects already hands out copies, each taken under its own lock.
+     */
+    @Override
+    public void saveCheckpoint(SimulationCheckpoint checkpoint) {
+        loadPriorLandmarks();
+        drainPoseRing();
+        List<LandMark> copies = new ArrayList<>(landmarkList.size());
+        boolean shared = landmarkList.holdsLandmarks();
         for (LandMark landmark : landmarkList) {
-            if (landmark.getId().equals(id)) {
-                return landmark;
+            if (!shared) {
+                copies.add(landmark);
+                continue;
+            }
+            synchronized (landmarkLocks[landmark.getSymbol() & (LOCK_STRIPES - 1)]) {
+                copies.add(landmark.copy());
+            }
+        }
+        checkpoint.setFusionState(copies, poseTimeline.toList(), pendingTrackedObjects.snapshot());
+    }
+
+    @Override
+    public void restoreCheckpoint(SimulationCheckpoint checkpoint) {
+        for (LandMark landmark : checkpoint.getLandmarks()) {
+            if (varianceTracking) {
+                landmark.enableVarianceTracking();
+            }
+            addLandmark(landmark);
+        }
+        poseTimeline.putAll(checkpoint.getPoses());
+        pendingTrackedObjects.restore(checkpoint.getPendingTrackedObjects());
+        System.out.println("FusionSlam: Restored " + checkpoint.getLandmarks().size() + " landmarks and "
+                + checkpoint.getPoses().size() + " poses from the checkpoint before tick " + checkpoint.getTick() + ".");
+    }
+
+    /**
+     * Starts maintaining a {@link LandmarkSpatialIndex} over the landmarks, including those already mapped.
+     */
+    public void enableSpatialIndex(double cellSize) {
+        if (!landmarkList.holdsLandmarks()) {
+            System.err.println("FusionSlam: The spatial index needs landmark objects; not available with the off-heap landmark store.");
+            return;
+        }
+        loadPriorLandmarks();
+        LandmarkSpatialIndex index = new LandmarkSpatialIndex(cellSize);
+        for (LandMark landmark : landmarkList) {
+            synchronized (landmarkLocks[landmark.getSymbol() & (LOCK_STRIPES - 1)]) {
+                index.update(landmark);
             }
         }
-        return null;
+        spatialIndex = index;
+    }
+
+    /**
+     * @return the spatial index, or null if {@link #enableSpatialIndex(double)} was not called.
+     */
+    public LandmarkSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * @return the landmarks with a point within {@code radius} of (x, y), closest first.
+     */
+    public List<LandMark> findLandmarksWithin(double x, double y, double radius) {
+        return requireSpatialIndex().withinRadius(x, y, radius);
+    }
+
+    /**
+     * @return the {@code k} landmarks closest to (x, y), closest first.
+     */
+    public List<LandMark> findNearestLandmarks(double x, double y, int k) {
+        return requireSpatialIndex().nearest(x, y, k);
     }
 
+    private LandmarkSpatialIndex requireSpatialIndex() {
+        LandmarkSpatialIndex index = spatialIndex;
+        if (index == null) {
+            throw new IllegalStateException("The landmark spatial index is not enabled");
+        }
+        return index;
+    }
+
+    /**
+     * Keeps only the poses of the last {@code retentionTicks} ticks; 0 keeps every pose.
+     * Must be called before any pose is added.
+     */
+    public void setPoseRetention(int retentionTicks) {
+        poseTimeline = new PoseTimeline(retentionTicks);
+    }
+
+    public void addPose(Pose pose) {
+        poseTimeline.put(pose);
+    }
+
+    /**
+     * @return the pose at {@code timestamp}, interpolated if the robot's poses around it are known
+     *         but not that tick's, or null.
+     */
+    public Pose getPoseByTime(int timestamp) {
+        if (timestamp > poseRingDrainedThrough) {
+            drainPoseRing(); // only then can the ring hold a pose the timeline lacks
+        }
+        return poseTimeline.getOrInterpolate(timestamp);
+    }
+
+    /**
+     * Copies the poses PoseService published since the last call into the timeline. Called on every
+     * tick, so the ring never overwrites a pose before it is copied, however long no tracked objects arrive.
+     * Poses the ring already overwrote are skipped.
+     */
+    public synchronized void drainPoseRing() {
+        PoseRing ring = PoseRing.getInstance();
+        int latest = ring.getLatestTime();
+        int oldest = latest - ring.capacity() + 1;
+        if (poseRingDrainedThrough >= 0 && oldest > poseRingDrainedThrough + 1) {
+            System.err.println("FusionSlam: Poses of ticks " + (poseRingDrainedThrough + 1) + " to " + (oldest - 1)
+                    + " were overwritten in the pose ring before they were read.");
+        }
+        for (int time = Math.max(poseRingDrainedThrough + 1, oldest); time <= latest; time++) {
+            Pose pose = ring.get(time);
+            if (pose != null) {
+                poseTimeline.put(pose);
+            }
+        }
+        poseRingDrainedThrough = Math.max(poseRingDrainedThrough, latest);
+    }
+
+    public LandMark findLandmarkById(String id) {
+        int symbol = ObjectIds.lookup(id);
+        LandMark landmark = symbol == ObjectIds.NONE ? null : findLandmarkBySymbol(symbol);
+        return landmark != null ? landmark : loadPriorLandmark(id);
+    }
+
+    public LandMark findLandmarkBySymbol(int symbol) {
+        return landmarkList.getBySymbol(symbol);
+    }
+
+    /**
+     * Fuses tracked objects into the map. If the pose of their detection time is not known yet they are
+     * buffered and fused by {@link #releasePendingTrackedObjects(int)} once it arrives.
+     */
     public void processTrackedObjects(List<TrackedObject> trackedObjects, int detectionTime) {
         Pose poseAtTime = getPoseByTime(detectionTime);
         if (poseAtTime == null) {
-            System.out.println("Pose not found for time: " + detectionTime);
+            System.out.println("Pose not found for time: " + detectionTime + ", buffering " + trackedObjects.size() + " tracked objects");
+            pendingTrackedObjects.add(trackedObjects, detectionTime);
             return;
         }
+        fuseTrackedObjects(trackedObjects, poseAtTime);
+    }
 
-        for (TrackedObject object : trackedObjects) {
-            System.out.println("Processing object with ID: " + object.getId());
-            List<CloudPoint> transformedCoordinates = new ArrayList<>();
+    /**
+     * Fuses buffered tracked objects whose pose has arrived by now and drops expired ones.
+     */
+    public void releasePendingTrackedObjects(int currentTick) {
+        for (PendingTrackedObjects.Release release : takeReleasedTrackedObjects(currentTick)) {
+            fuseTrackedObjects(release.getTrackedObjects(), release.getPose());
+        }
+    }
+
+    /**
+     * Removes the buffered tracked objects whose pose has arrived by now, without fusing them, and drops
+     * expired ones; for a caller that fuses them elsewhere (on the shards that own them).
+     */
+    public List<PendingTrackedObjects.Release> takeReleasedTrackedObjects(int currentTick) {
+        if (pendingTrackedObjects.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return pendingTrackedObjects.release(currentTick, this::getPoseByTime);
+    }
+
+    /**
+     * @param limit       Maximum number of tracked objects waiting for a pose; 0 keeps the default.
+     * @param expiryTicks Ticks a detection may wait for its pose; 0 keeps the default.
+     */
+    public void configurePendingTrackedObjects(int limit, int expiryTicks) {
+        pendingTrackedObjects.configure(limit, expiryTicks);
+    }
+
+    public PendingTrackedObjects getPendingTrackedObjects() {
+        return pendingTrackedObjects;
+    }
 
-            for (CloudPoint point : object.getCoordinates()) {
-                double radYaw = Math.toRadians(poseAtTime.getYaw());
-                double cosTheta = Math.cos(radYaw);
-                double sinTheta = Math.sin(radYaw);
+    /**
+     * Tracks the spread of the observations of every point of landmarks mapped from now on;
+     * the output file then lists a variance per point next to the coordinates.
+     */
+    public void setVarianceTracking(boolean varianceTracking) {
+        this.varianceTracking = varianceTracking;
+    }
+
+    /**
+     * Also writes the final map as {@code output_map.bin} in {@link LandmarkMapFormat}, next to the JSON output.
+     *
+     * @param float32 store coordinates as float32 instead of float64.
+     */
+    public void enableBinaryMapOutput(boolean float32) {
+        this.binaryMapOutput = true;
+        this.binaryMapFloat32 = float32;
+    }
+
+    /**
+     * @param parallelThreshold Batches with at least this many tracked objects are fused on the fork-join pool;
+     *                          0 keeps the default.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold > 0) {
+            this.parallelThreshold = parallelThreshold;
+        }
+    }
 
-                double globalX = cosTheta * point.getX() - sinTheta * point.getY() + poseAtTime.getX();
-                double globalY = sinTheta * point.getX() + cosTheta * point.getY() + poseAtTime.getY();
+    private void fuseTrackedObjects(List<TrackedObject> trackedObjects, Pose poseAtTime) {
+        if (trackedObjects.size() < parallelThreshold) {
+            for (TrackedObject object : trackedObjects) {
+                fuseTrackedObject(object, poseAtTime);
+            }
+            return;
+        }
 
-                transformedCoordinates.add(new CloudPoint(globalX, globalY));
+        // Objects of the same landmark stay together and in order, so the averaging
+        // gives the same result as the serial path. New landmarks are added up front with
+        // their first observation, in batch order, so the output order does not depend on
+        // scheduling either.
+        Map<Integer, List<TrackedObject>> byLandmark = new LinkedHashMap<>();
+        for (TrackedObject object : trackedObjects) {
+            byLandmark.computeIfAbsent(object.getSymbol(), symbol -> new ArrayList<>()).add(object);
+        }
+        List<List<TrackedObject>> groups = new ArrayList<>(byLandmark.size());
+        for (List<TrackedObject> objects : byLandmark.values()) {
+            TrackedObject first = objects.get(0);
+            if (!landmarkList.containsSymbol(first.getSymbol()) && loadPriorLandmark(first.getId()) == null) {
+                fuseTrackedObject(first, poseAtTime);
+                objects = objects.subList(1, objects.size());
+            }
+            if (!objects.isEmpty()) {
+                groups.add(objects);
+            }
+        }
+        IntStream.range(0, groups.size()).parallel().forEach(group -> {
+            for (TrackedObject object : groups.get(group)) {
+                fuseTrackedObject(object, poseAtTime);
             }
+        });
+    }
 
-            LandMark existingLandmark = findLandmarkById(object.getId());
-            if (existingLandmark == null) {
-                System.out.println("Adding new landmark with ID: " + object.getId());
-                addLandmark(new LandMark(object.getId(), object.getDescription(), transformedCoordinates));
-                StatisticalFolder.getInstance().incrementNumLandmarks(1);
-            } else {
-                existingLandmark.updateCoordinates(transformedCoordinates);
-                System.out.println("Updated existing landmark with ID: " + object.getId());
+    /**
+     * Fuses the object into its landmark. A landmark observed for the first time (and not in the prior map)
+     * is added already holding the object's points, so no one ever sees it without coordinates.
+     */
+    private void fuseTrackedObject(TrackedObject object, Pose poseAtTime) {
+        TransformKernel kernel = transformKernels.get().setPose(poseAtTime);
+        int count = kernel.transform(object.getCoordinates());
+        int symbol = object.getSymbol();
+        boolean added = false;
+        synchronized (landmarkLocks[symbol & (LOCK_STRIPES - 1)]) {
+            if (!landmarkList.containsSymbol(symbol) && loadPriorLandmark(object.getId()) == null) {
+                LandMark landmark = new LandMark(object.getId(), object.getDescription(), new ArrayList<>());
+                if (varianceTracking) {
+                    landmark.enableVarianceTracking();
+                }
+                landmark.updateCoordinates(kernel.getX(), kernel.getY(), count);
+                added = landmarkList.putIfAbsent(landmark) == null;
             }
+            if (!added) {
+                landmarkList.mergeCoordinates(symbol, kernel.getX(), kernel.getY(), count);
+            }
+            LandmarkSpatialIndex index = spatialIndex;
+            if (index != null) {
+                index.update(landmarkList.getBySymbol(symbol));
+            }
+        }
+        MapDeltaLog deltaLog = mapDeltaLog;
+        if (deltaLog != null) {
+            deltaLog.markDirty(landmarkList.getBySymbol(symbol));
+        }
+        LandmarkHistory versions = history;
+        if (versions != null) {
+            versions.markDirty(symbol);
+        }
+        if (added) {
+            System.out.println("Adding new landmark with ID: " + object.getId());
+            StatisticalFolder.getInstance().incrementNumLandmarks(1);
         }
     }
 
@@ -118,6 +597,13 @@ public class FusionSlam {
         return true;
     }
 
+    /**
+     * @return true if {@link #shouldTerminateAtTime(int)} will end the run at {@code currentTime}.
+     */
+    public boolean isTerminationDue(int currentTime) {
+        return serviceCount.get() == 0 || isDurationPassed(currentTime);
+    }
+
     public boolean shouldTerminateAtTime(int currentTime) {
         if (serviceCount.get() == 0 || isDurationPassed(currentTime)) {
             if (!outputFileCreated) {
@@ -143,6 +629,18 @@ public class FusionSlam {
         return parentDirectory.resolve("output_file.json").toString();
     }
 
+    public String getBinaryMapFilePath() {
+        Path configFilePathObj = Paths.get(configFilePath);
+        Path parentDirectory = configFilePathObj.getParent();
+        return parentDirectory.resolve("output_map.bin").toString();
+    }
+
+    public String getMapDeltaLogPath() {
+        Path configFilePathObj = Paths.get(configFilePath);
+        Path parentDirectory = configFilePathObj.getParent();
+        return parentDirectory.resolve("map_delta.log").toString();
+    }
+
     public String getErrorOutputFilePath() {
         Path configFilePathObj = Paths.get(configFilePath);
         Path parentDirectory = configFilePathObj.getParent();
@@ -154,6 +652,7 @@ public class FusionSlam {
         if (outputFileCreated) return;
         outputFileCreated = true;
         System.out.println("FusionSlam: Creating output file...");
+        System.out.println("FusionSlam: Tracked objects awaiting poses: " + pendingTrackedObjects.report());
 
         String outputFilePath = getOutputFilePath();
         if (outputFilePath == null) {
@@ -161,35 +660,31 @@ public class FusionSlam {
             return;
         }
 
-        try (FileWriter writer = new FileWriter(outputFilePath)) {
-            writer.write("{\"systemRuntime\":" + StatisticalFolder.getInstance().getSystemRuntime() +
-                    ",\"numDetectedObjects\":" + StatisticalFolder.getInstance().getNumDetectedObjects() +
-                    ",\"numTrackedObjects\":" + StatisticalFolder.getInstance().getNumTrackedObjects() +
-                    ",\"numLandmarks\":" + StatisticalFolder.getInstance().getNumLandmarks() + ",");
-
-            writer.write("\n");
-            writer.write("\"landMarks\":{\n");
-            for (int i = 0; i < landmarkList.size(); i++) {
-                LandMark landMark = landmarkList.get(i);
-                writer.write("\"" + landMark.getId() + "\":{\"id\":\"" + landMark.getId() +
-                        "\",\"description\":\"" + landMark.getDescription() +
-                        "\",\"coordinates\":" + new Gson().toJson(landMark.getCoordinates()) + "}");
-
-                if (i < landmarkList.size() - 1) {
-                    writer.write(",\n");
-                }
-            }
-            writer.write("\n}}");
-            System.out.println("FusionSlam: Output file created successfully.");
-        } catch (IOException e) {
-            e.printStackTrace();
+        loadPriorLandmarks();
+        closeMapDeltaLog();
+        LandmarkHistory versions = history;
+        if (versions != null && versions.getLatestTick() >= 0) {
+            recordHistory(versions.getLatestTick());
+            System.out.println("FusionSlam: Landmark history holds " + versions.getVersionCount() + " versions from tick "
+                    + versions.getEarliestTick() + " to " + versions.getLatestTick() + ".");
         }
+        FusionSlamOutputWriter writer = new FusionSlamOutputWriter(StatisticalFolder.getInstance());
+        List<LandMark> landmarks = new ArrayList<>(landmarkList);
+        String binaryMapPath = binaryMapOutput ? getBinaryMapFilePath() : null;
+        boolean float32 = binaryMapFloat32;
+        startOutputThread("Output file", () -> {
+            writer.writeOutput(Paths.get(outputFilePath), landmarks);
+            if (binaryMapPath != null) {
+                writer.writeBinaryMap(Paths.get(binaryMapPath), landmarks, float32);
+            }
+        });
     }
 
     public void createErrorOutputFile(String errorMessage, String faultySensor) {
         if (outputFileCreated) return;
         outputFileCreated = true;
         System.out.println("FusionSlam: Creating error output file...");
+        System.out.println("FusionSlam: Tracked objects awaiting poses: " + pendingTrackedObjects.report());
 
         String outputFilePath = getErrorOutputFilePath();
         if (outputFilePath == null) {
@@ -197,69 +692,55 @@ public class FusionSlam {
             return;
         }
 
-        try (FileWriter writer = new FileWriter(outputFilePath)) {
-            writer.write("{\n");
+        loadPriorLandmarks();
+        closeMapDeltaLog();
+        LandmarkHistory versions = history;
+        if (versions != null && versions.getLatestTick() >= 0) {
+            recordHistory(versions.getLatestTick());
+            System.out.println("FusionSlam: Landmark history holds " + versions.getVersionCount() + " versions from tick "
+                    + versions.getEarliestTick() + " to " + versions.getLatestTick() + ".");
+        }
+        FusionSlamOutputWriter writer = new FusionSlamOutputWriter(StatisticalFolder.getInstance());
+        Map<String, StampedDetectedObjects> cameraFrames = new LinkedHashMap<>(CameraFrameManager.getInstance().getCameraMap());
+        Map<String, List<TrackedObject>> lidarFrames = new LinkedHashMap<>(LiDarFrameManager.getInstance().getLiDarMap());
+        drainPoseRing();
+        List<Pose> poses = poseTimeline.toList();
+        List<LandMark> landmarks = new ArrayList<>(landmarkList);
+        startOutputThread("Error output file", () -> writer.writeErrorOutput(Paths.get(outputFilePath),
+                errorMessage, faultySensor, cameraFrames, lidarFrames, poses, landmarks));
+    }
 
-            writer.write("  \"{error\": \"" + errorMessage + "\",\n");
-            writer.write("  \"faultySensor\": \"" + faultySensor + "\",\n");
+    /**
+     * Waits until the output file started by {@link #createOutputFile()} or
+     * {@link #createErrorOutputFile(String, String)} has been written.
+     */
+    public void awaitOutputFile() throws InterruptedException {
+        Thread thread = outputThread;
+        if (thread != null) {
+            thread.join();
+        }
+    }
 
-            writer.write("  \"lastCamerasFrame\": {\n");
-            Map<String, StampedDetectedObjects> cameraFrames = CameraFrameManager.getInstance().getCameraMap();
-            int cameraCount = 0;
-            for (Map.Entry<String, StampedDetectedObjects> entry : cameraFrames.entrySet()) {
-                writer.write("    \"Camera" + entry.getKey() + "\": " + new Gson().toJson(entry.getValue()));
-                if (++cameraCount < cameraFrames.size()) {
-                    writer.write(",");
-                }
-                writer.write("\n");
-            }
-            writer.write("  },\n");
-
-            writer.write("  \"lastLiDarWorkerTrackersFrame\": {\n");
-            Map<String, List<TrackedObject>> lidarFrames = LiDarFrameManager.getInstance().getLiDarMap();
-            int lidarCount = 0;
-            for (Map.Entry<String, List<TrackedObject>> entry : lidarFrames.entrySet()) {
-                writer.write("    \"LiDarWorkerTracker" + entry.getKey() + "\": " + new Gson().toJson(entry.getValue()));
-                if (++lidarCount < lidarFrames.size()) {
-                    writer.write(",");
-                }
-                writer.write("\n");
-            }
-            writer.write("  },\n");
-
-            writer.write("  \"poses\": [");
-            for (int i = 0; i < poseList.size(); i++) {
-                Pose pose = poseList.get(i);
-                writer.write("{\"time\": " + pose.getTime() +
-                        ", \"x\": " + pose.getX() +
-                        ", \"y\": " + pose.getY() +
-                        ", \"yaw\": " + pose.getYaw() + "}");
-
-                if (i < poseList.size() - 1) {
-                    writer.write(",");
-                }
+    /**
+     * Writes an output file on its own (non-daemon) thread, so that the service that ends the run
+     * is not held up by serialization and the JVM still waits for the file.
+     */
+    private void startOutputThread(String description, OutputTask task) {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                task.write();
+                System.out.println("FusionSlam: " + description + " created successfully in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            } catch (IOException e) {
+                System.err.println("FusionSlam: Could not write " + description.toLowerCase() + ": " + e.getMessage());
             }
-            writer.write("  ],\n");
-
-            writer.write("\"statistics\":{\"systemRuntime\":" + StatisticalFolder.getInstance().getSystemRuntime() +
-                    ",\"numDetectedObjects\":" + StatisticalFolder.getInstance().getNumDetectedObjects() +
-                    ",\"numTrackedObjects\":" + StatisticalFolder.getInstance().getNumTrackedObjects() +
-                    ",\"numLandmarks\":" + StatisticalFolder.getInstance().getNumLandmarks() + ",");
-
-            writer.write("\"landMarks\":{");
-            for (int i = 0; i < landmarkList.size(); i++) {
-                LandMark landMark = landmarkList.get(i);
-                writer.write("\"" + landMark.getId() + "\":" + new Gson().toJson(landMark));
-                if (i < landmarkList.size() - 1) {
-                    writer.write(",");
-                }
-            }
-            writer.write("}}");
+        }, "FusionSlam-output");
+        outputThread = thread;
+        thread.start();
+    }
 
-            writer.write("}");
-            System.out.println("FusionSlam: Error output file created successfully.");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private interface OutputTask {
+        void write() throws IOException;
     }
 }
@@ -0,0 +1,207 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Streams the Fusion-SLAM output files through a Gson {@link JsonWriter} over a buffered file channel.
+ * Statistics are taken when the writer is created, so the file describes the moment the run ended
+ * even if it is written later on another thread. Large landmark maps are serialized in chunks on
+ * the common fork-join pool and written out in map order.
+ */
+public class FusionSlamOutputWriter {
+    public static final int BUFFER_BYTES = 1 << 20;
+    public static final int PARALLEL_CHUNK = 4096;
+    private static final Type TRACKED_OBJECTS = new TypeToken<List<TrackedObject>>() { }.getType();
+
+    private final Gson gson;
+    private final int systemRuntime;
+    private final int numDetectedObjects;
+    private final int numTrackedObjects;
+    private final int numLandmarks;
+
+    public FusionSlamOutputWriter(StatisticalFolder statistics) {
+        this.gson = new Gson();
+        this.systemRuntime = statistics.getSystemRuntime();
+        this.numDetectedObjects = statistics.getNumDetectedObjects();
+        this.numTrackedObjects = statistics.getNumTrackedObjects();
+        this.numLandmarks = statistics.getNumLandmarks();
+    }
+
+    /**
+     * Writes {@code output_file.json}: the statistics followed by the landmark map.
+     */
+    public void writeOutput(Path path, List<LandMark> landmarks) throws IOException {
+        try (FileChannel channel = open(path);
+             JsonWriter out = new JsonWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_BYTES))) {
+            out.beginObject();
+            writeStatistics(out);
+            out.name("landMarks");
+            writeLandmarks(out, landmarks, "description", "coordinates", true);
+            out.endObject();
+        }
+    }
+
+    /**
+     * Writes the same statistics and landmarks as {@link #writeOutput(Path, List)} in {@link LandmarkMapFormat}.
+     */
+    public void writeBinaryMap(Path path, List<LandMark> landmarks, boolean float32) throws IOException {
+        LandmarkMapFormat.write(path, systemRuntime, numDetectedObjects, numTrackedObjects, numLandmarks, landmarks, float32);
+    }
+
+    /**
+     * Writes {@code OutputError.json}: the error, the last frame of every sensor, the poses and the statistics with the map.
+     */
+    public void writeErrorOutput(Path path, String errorMessage, String faultySensor,
+                                 Map<String, StampedDetectedObjects> cameraFrames,
+                                 Map<String, List<TrackedObject>> lidarFrames,
+                                 List<Pose> poses, List<LandMark> landmarks) throws IOException {
+        try (FileChannel channel = open(path);
+             JsonWriter out = new JsonWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_BYTES))) {
+            out.setIndent("  ");
+            out.beginObject();
+            out.name("error").value(errorMessage);
+            out.name("faultySensor").value(faultySensor);
+
+            out.name("lastCamerasFrame").beginObject();
+            for (Map.Entry<String, StampedDetectedObjects> entry : cameraFrames.entrySet()) {
+                out.name("Camera" + entry.getKey());
+                gson.toJson(entry.getValue(), StampedDetectedObjects.class, out);
+            }
+            out.endObject();
+
+            out.name("lastLiDarWorkerTrackersFrame").beginObject();
+            for (Map.Entry<String, List<TrackedObject>> entry : lidarFrames.entrySet()) {
+                out.name("LiDarWorkerTracker" + entry.getKey());
+                gson.toJson(entry.getValue(), TRACKED_OBJECTS, out);
+            }
+            out.endObject();
+
+            out.name("poses").beginArray();
+            for (int i = 0; i < poses.size(); i++) {
+                Pose pose = poses.get(i);
+                out.beginObject();
+                out.name("time").value(pose.getTime());
+                out.name("x").value(pose.getX());
+                out.name("y").value(pose.getY());
+                out.name("yaw").value(pose.getYaw());
+                out.endObject();
+            }
+            out.endArray();
+
+            out.name("statistics").beginObject();
+            writeStatistics(out);
+            out.name("landMarks");
+            writeLandmarks(out, landmarks, "Description", "Coordinates", false);
+            out.endObject();
+            out.endObject();
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void writeStatistics(JsonWriter out) throws IOException {
+        out.name("systemRuntime").value(systemRuntime);
+        out.name("numDetectedObjects").value(numDetectedObjects);
+        out.name("numTrackedObjects").value(numTrackedObjects);
+        out.name("numLandmarks").value(numLandmarks);
+    }
+
+    /**
+     * Writes the landmarks as an object keyed by id. Below {@link #PARALLEL_CHUNK} landmarks they are
+     * streamed directly; above it every chunk is rendered to text in parallel and spliced in with
+     * {@link JsonWriter#jsonValue(String)}.
+     */
+    private void writeLandmarks(JsonWriter out, List<LandMark> landmarks, String descriptionKey,
+                                String coordinatesKey, boolean withVariances) throws IOException {
+        int count = landmarks.size();
+        out.beginObject();
+        if (count < PARALLEL_CHUNK) {
+            for (int i = 0; i < count; i++) {
+                LandMark landmark = landmarks.get(i);
+                out.name(landmark.getId());
+                writeLandmark(out, landmark, descriptionKey, coordinatesKey, withVariances);
+            }
+        } else {
+            int chunks = (count + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            String[][] rendered = new String[chunks][];
+            try {
+                IntStream.range(0, chunks).parallel().forEach(chunk ->
+                        rendered[chunk] = render(landmarks, chunk * PARALLEL_CHUNK,
+                                Math.min(count, (chunk + 1) * PARALLEL_CHUNK), descriptionKey, coordinatesKey, withVariances));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = chunk * PARALLEL_CHUNK;
+                for (int i = 0; i < rendered[chunk].length; i++) {
+                    out.name(landmarks.get(from + i).getId()).jsonValue(rendered[chunk][i]);
+                }
+            }
+        }
+        out.endObject();
+    }
+
+    private String[] render(List<LandMark> landmarks, int from, int to, String descriptionKey,
+                            String coordinatesKey, boolean withVariances) {
+        String[] rendered = new String[to - from];
+        StringWriter text = new StringWriter(256);
+        try {
+            for (int i = from; i < to; i++) {
+                text.getBuffer().setLength(0);
+                JsonWriter out = new JsonWriter(text);
+                writeLandmark(out, landmarks.get(i), descriptionKey, coordinatesKey, withVariances);
+                out.flush();
+                rendered[i - from] = text.toString();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rendered;
+    }
+
+    private static void writeLandmark(JsonWriter out, LandMark landmark, String descriptionKey,
+                                      String coordinatesKey, boolean withVariances) throws IOException {
+        int points = landmark.getPointCount();
+        out.beginObject();
+        out.name("id").value(landmark.getId());
+        out.name(descriptionKey).value(landmark.getDescription());
+        out.name(coordinatesKey).beginArray();
+        for (int i = 0; i < points; i++) {
+            out.beginObject();
+            out.name("x").value(landmark.getX(i));
+            out.name("y").value(landmark.getY(i));
+            out.endObject();
+        }
+        out.endArray();
+        if (withVariances && landmark.isVarianceTracked()) {
+            out.name("observations").beginArray();
+            for (int i = 0; i < points; i++) {
+                out.value(landmark.getObservations(i));
+            }
+            out.endArray();
+            out.name("variances").beginArray();
+            for (int i = 0; i < points; i++) {
+                out.value(landmark.getVariance(i));
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+}
@@ -18,32 +18,40 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class GPSIMU {
     private int currentTick;
     private STATUS status;
-    private List<Pose> poseList;
+    private final PoseTimeline poseTimeline;
+    private volatile boolean live;
 
     public GPSIMU() {
         this.currentTick = 0;
         this.status = STATUS.UP;
-        this.poseList = new ArrayList<>();
+        this.poseTimeline = new PoseTimeline();
         initializePoseList();
     }
 
+    /**
+     * Creates a GPSIMU over an already loaded (or, in tail mode, initially empty) pose list,
+     * so the pose file does not have to be read a second time.
+     *
+     * @param poseList The poses to serve; further poses can be appended with {@link #addPose}.
+     */
+    public GPSIMU(List<Pose> poseList) {
+        this.currentTick = 0;
+        this.status = STATUS.UP;
+        this.poseTimeline = new PoseTimeline();
+        this.poseTimeline.putAll(poseList);
+    }
+
 
     public Pose getPoseByTime(int time) {
-        for (Pose pose : poseList) {
-            if (pose.getTime() == time) {
-                return pose;
-            }
-        }
-        return null;
+        return poseTimeline.get(time);
     }
 
 
     public boolean isLastTick(int currentTick) {
-        if (poseList.isEmpty()) {
+        if (live || poseTimeline.isEmpty()) {
             return false;
         }
-        int lastPose = poseList.get(poseList.size() - 1).getTime();
-        return currentTick >= lastPose;
+        return currentTick >= poseTimeline.getLastTime();
     }
 
 
@@ -55,19 +63,37 @@ public class GPSIMU {
     private void initializePoseList() {
         try {
             Configuration config = Configuration.getInstance(null);
-            this.poseList = config.loadPoseList();
+            poseTimeline.putAll(config.loadPoseList());
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize PoseList in GPSIMU", e);
         }
     }
 
 
+    /**
+     * Appends a pose that was read after startup (tail mode).
+     */
+    public void addPose(Pose pose) {
+        poseTimeline.put(pose);
+    }
+
+    /**
+     * While live, the pose file is still growing and its last entry does not mark the end of the run.
+     */
+    public void setLive(boolean live) {
+        this.live = live;
+    }
+
     public void setStatus(STATUS status) {
         this.status = status;
     }
 
+    /**
+     * Advances the current tick. Poses of earlier ticks are no longer served and are released.
+     */
     public void setCurrentTick(int currentTick) {
         this.currentTick = currentTick;
+        poseTimeline.trimBefore(currentTick);
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,42 +1,209 @@
 package bgu.spl.mics.application.objects;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a landmark in the environment map.
  * Landmarks are identified and updated by the FusionSlam service.
+ * <p>
+ * Coordinates are kept in primitive arrays together with the number of observations of every
+ * point; a new observation moves the point by the running mean, so each observation has the same
+ * weight. Optionally the spread of the observations around each point is tracked as well
+ * (Welford's method). Once the arrays have grown to the landmark's size, updates allocate nothing.
  */
 public class LandMark {
+    private static final int INITIAL_CAPACITY = 4;
+
     private String id;
     private String Description;
-    private List<CloudPoint> Coordinates;
+    private transient int symbol;
+    private transient double[] xs;
+    private transient double[] ys;
+    private transient int[] observations;
+    private transient double[] squaredDeviations;
+    private transient volatile int size;
 
     public LandMark(String id, String description, List<CloudPoint> coordinates) {
         this.id = id;
+        this.symbol = ObjectIds.intern(id);
+        this.Description = description;
+        int capacity = Math.max(INITIAL_CAPACITY, coordinates.size());
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.observations = new int[capacity];
+        for (int i = 0; i < coordinates.size(); i++) {
+            xs[i] = coordinates.get(i).getX();
+            ys[i] = coordinates.get(i).getY();
+            observations[i] = 1;
+        }
+        this.size = coordinates.size();
+    }
+
+    /**
+     * Restores a landmark from {@code count} fused points with their observation counts, e.g. from a
+     * saved map. {@code variances} may be null if the spread was not tracked.
+     */
+    public LandMark(String id, String description, double[] xs, double[] ys, int[] observations,
+                    double[] variances, int count) {
+        this.id = id;
+        this.symbol = ObjectIds.intern(id);
         this.Description = description;
-        this.Coordinates = coordinates;
+        int capacity = Math.max(INITIAL_CAPACITY, count);
+        this.xs = Arrays.copyOf(xs, capacity);
+        this.ys = Arrays.copyOf(ys, capacity);
+        this.observations = Arrays.copyOf(observations, capacity);
+        Arrays.fill(this.observations, count, capacity, 0);
+        if (variances != null) {
+            this.squaredDeviations = new double[capacity];
+            for (int i = 0; i < count; i++) {
+                squaredDeviations[i] = variances[i] * observations[i];
+            }
+        }
+        this.size = count;
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * @return the interned {@link ObjectIds} symbol of the id.
+     */
+    public int getSymbol() {
+        if (symbol == ObjectIds.NONE) {
+            symbol = ObjectIds.intern(id);
+        }
+        return symbol;
+    }
+
     public String getDescription() {
         return Description;
     }
 
+    /**
+     * @return a snapshot of the fused points.
+     */
     public List<CloudPoint> getCoordinates() {
-        return Coordinates;
+        int count = size;
+        double[] x = xs;
+        double[] y = ys;
+        List<CloudPoint> coordinates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            coordinates.add(new CloudPoint(x[i], y[i]));
+        }
+        return coordinates;
+    }
+
+    /**
+     * @return an independent copy of this landmark, including observation counts and variances.
+     */
+    public LandMark copy() {
+        LandMark copy = new LandMark(id, Description, xs, ys, observations, null, size);
+        if (squaredDeviations != null) {
+            copy.squaredDeviations = Arrays.copyOf(squaredDeviations, copy.xs.length);
+        }
+        return copy;
+    }
+
+    public int getPointCount() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return how many observations were fused into the point at {@code index}.
+     */
+    public int getObservations(int index) {
+        return observations[index];
+    }
+
+    /**
+     * Starts tracking the spread of the observations of every point. Points observed before
+     * this call count as a single observation.
+     */
+    public synchronized void enableVarianceTracking() {
+        if (squaredDeviations == null) {
+            squaredDeviations = new double[xs.length];
+        }
+    }
+
+    public boolean isVarianceTracked() {
+        return squaredDeviations != null;
+    }
+
+    /**
+     * @return the mean squared distance of the observations from the point at {@code index},
+     *         or NaN if variance is not tracked.
+     */
+    public double getVariance(int index) {
+        double[] deviations = squaredDeviations;
+        if (deviations == null) {
+            return Double.NaN;
+        }
+        return deviations[index] / observations[index];
     }
 
     public synchronized void updateCoordinates(List<CloudPoint> newPoints) {
+        ensureCapacity(newPoints.size());
         for (int i = 0; i < newPoints.size(); i++) {
-            if (i < Coordinates.size()) {
-                double avgX = (Coordinates.get(i).getX() + newPoints.get(i).getX()) / 2;
-                double avgY = (Coordinates.get(i).getY() + newPoints.get(i).getY()) / 2;
-                Coordinates.set(i, new CloudPoint(avgX, avgY));
-            } else {
-                Coordinates.add(newPoints.get(i));
-            }
+            observe(i, newPoints.get(i).getX(), newPoints.get(i).getY());
+        }
+        size = Math.max(size, newPoints.size());
+    }
+
+    /**
+     * Same as {@link #updateCoordinates(List)} for points given as coordinate arrays of length {@code count} or more.
+     */
+    public synchronized void updateCoordinates(double[] xs, double[] ys, int count) {
+        mergeCoordinates(xs, ys, count);
+    }
+
+    /**
+     * Unsynchronized {@link #updateCoordinates(double[], double[], int)}, for callers that already
+     * exclude other writers of this landmark (Fusion-SLAM's striped landmark locks).
+     */
+    void mergeCoordinates(double[] xs, double[] ys, int count) {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            observe(i, xs[i], ys[i]);
+        }
+        size = Math.max(size, count);
+    }
+
+    private void observe(int i, double x, double y) {
+        int n = ++observations[i];
+        if (n == 1) {
+            xs[i] = x;
+            ys[i] = y;
+            return;
+        }
+        double dx = x - xs[i];
+        double dy = y - ys[i];
+        xs[i] += dx / n;
+        ys[i] += dy / n;
+        if (squaredDeviations != null) {
+            squaredDeviations[i] += dx * (x - xs[i]) + dy * (y - ys[i]);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= xs.length) {
+            return;
+        }
+        int capacity = Math.max(count, xs.length * 2);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        observations = Arrays.copyOf(observations, capacity);
+        if (squaredDeviations != null) {
+            squaredDeviations = Arrays.copyOf(squaredDeviations, capacity);
         }
     }
 
@@ -0,0 +1,228 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The map at every tick of the run, so it can be inspected as it was at an earlier tick.
+ * <p>
+ * Every landmark has a chain of immutable versions, newest first, each tagged with the tick it was
+ * recorded at. Fusion-SLAM marks landmarks dirty as it fuses them and, on every tick, puts a copy of
+ * each dirty landmark at the head of its chain. A single thread records; queries only follow
+ * volatile references (the chain heads are an {@link AtomicReferenceArray}) and never wait for it.
+ * <p>
+ * With a retention of {@code retentionTicks}, versions superseded more than that many ticks ago are
+ * dropped when their landmark is next recorded, so a chain holds at most about one version per
+ * retained tick and queries reach back to {@link #getEarliestTick()}.
+ */
+public class LandmarkHistory {
+
+    /**
+     * A landmark as it was from {@link #getTick()} until the next version.
+     */
+    public static final class Version {
+        private final int tick;
+        private final LandMark landmark;
+        private volatile Version previous;
+
+        private Version(int tick, LandMark landmark, Version previous) {
+            this.tick = tick;
+            this.landmark = landmark;
+            this.previous = previous;
+        }
+
+        public int getTick() {
+            return tick;
+        }
+
+        /**
+         * @return a copy no one modifies.
+         */
+        public LandMark getLandmark() {
+            return landmark;
+        }
+    }
+
+    private final int retentionTicks;
+    private final Set<Integer> dirty;
+    private volatile AtomicReferenceArray<Version> heads;
+    private volatile int[] order;
+    private volatile int size;
+    private volatile int latestTick;
+    private volatile int earliestTick;
+
+    /**
+     * @param retentionTicks ticks of history to keep; 0 keeps the whole run.
+     */
+    public LandmarkHistory(int retentionTicks) {
+        this.retentionTicks = Math.max(0, retentionTicks);
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.heads = new AtomicReferenceArray<>(Math.max(64, ObjectIds.size()));
+        this.order = new int[64];
+        this.latestTick = -1;
+    }
+
+    public void markDirty(int symbol) {
+        dirty.add(symbol);
+    }
+
+    /**
+     * Removes and returns the symbols of the landmarks marked dirty so far.
+     */
+    public int[] drainDirty() {
+        int[] drained = new int[dirty.size()];
+        int count = 0;
+        for (Integer symbol : dirty) {
+            if (dirty.remove(symbol)) {
+                if (count == drained.length) {
+                    drained = Arrays.copyOf(drained, count * 2 + 1);
+                }
+                drained[count++] = symbol;
+            }
+        }
+        return Arrays.copyOf(drained, count);
+    }
+
+    /**
+     * Makes {@code copies} the versions of their landmarks as of {@code tick}. Recording the same
+     * tick again replaces that tick's versions. Called by one thread, with ticks that never decrease.
+     */
+    public void record(int tick, List<LandMark> copies) {
+        for (LandMark landmark : copies) {
+            int symbol = landmark.getSymbol();
+            Version head = getHead(symbol);
+            if (head == null) {
+                append(symbol, new Version(tick, landmark, null));
+                continue;
+            }
+            Version version = new Version(tick, landmark, head.tick == tick ? head.previous : head);
+            heads.set(symbol, version);
+            prune(version, tick);
+        }
+        latestTick = Math.max(latestTick, tick);
+        earliestTick = retentionTicks == 0 ? 0 : Math.max(0, latestTick - retentionTicks);
+    }
+
+    /**
+     * @return the last tick recorded, or -1.
+     */
+    public int getLatestTick() {
+        return latestTick;
+    }
+
+    /**
+     * @return the earliest tick {@link #getLandmarksAt(int)} can answer.
+     */
+    public int getEarliestTick() {
+        return earliestTick;
+    }
+
+    /**
+     * @return the landmarks mapped by {@code tick}, each as it was at that tick, in the order they were first mapped.
+     * @throws IllegalArgumentException if the history of {@code tick} is no longer retained.
+     */
+    public List<LandMark> getLandmarksAt(int tick) {
+        if (tick < earliestTick) {
+            throw new IllegalArgumentException("Tick " + tick + " is older than the retained history (from tick " + earliestTick + ")");
+        }
+        int n = size;
+        int[] symbols = order;
+        AtomicReferenceArray<Version> chains = heads;
+        List<LandMark> landmarks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Version version = chains.get(symbols[i]);
+            while (version != null && version.tick > tick) {
+                version = version.previous;
+            }
+            if (version != null) {
+                landmarks.add(version.landmark);
+            }
+        }
+        return landmarks;
+    }
+
+    /**
+     * @return the retained versions of the landmark with {@code id}, oldest first; empty if it was never mapped.
+     */
+    public List<Version> getLandmarkHistory(String id) {
+        List<Version> versions = new ArrayList<>();
+        if (latestTick < 0) {
+            return versions;
+        }
+        int symbol = ObjectIds.lookup(id);
+        if (symbol == ObjectIds.NONE) {
+            return versions;
+        }
+        for (Version version = getHead(symbol); version != null; version = version.previous) {
+            versions.add(version);
+        }
+        Collections.reverse(versions);
+        return versions;
+    }
+
+    /**
+     * @return the number of versions held, for reporting.
+     */
+    public long getVersionCount() {
+        if (latestTick < 0) {
+            return 0;
+        }
+        int n = size;
+        int[] symbols = order;
+        AtomicReferenceArray<Version> chains = heads;
+        long count = 0;
+        for (int i = 0; i < n; i++) {
+            for (Version version = chains.get(symbols[i]); version != null; version = version.previous) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Version getHead(int symbol) {
+        AtomicReferenceArray<Version> chains = heads;
+        return symbol >= 0 && symbol < chains.length() ? chains.get(symbol) : null;
+    }
+
+    private void append(int symbol, Version version) {
+        AtomicReferenceArray<Version> chains = heads;
+        if (symbol >= chains.length()) {
+            AtomicReferenceArray<Version> grown = new AtomicReferenceArray<>(Math.max(symbol + 1, chains.length() * 2));
+            for (int i = 0; i < chains.length(); i++) {
+                grown.lazySet(i, chains.get(i));
+            }
+            chains = grown;
+        }
+        chains.set(symbol, version);
+        int n = size;
+        int[] symbols = order;
+        if (n == symbols.length) {
+            symbols = Arrays.copyOf(symbols, n * 2);
+        }
+        symbols[n] = symbol;
+        heads = chains;
+        order = symbols;
+        size = n + 1;
+    }
+
+    /**
+     * Cuts the chain after the newest version that was already current at the retention boundary.
+     */
+    private void prune(Version head, int tick) {
+        if (retentionTicks == 0) {
+            return;
+        }
+        int boundary = tick - retentionTicks;
+        for (Version version = head; version != null; version = version.previous) {
+            if (version.tick <= boundary) {
+                version.previous = null;
+                return;
+            }
+        }
+    }
+}
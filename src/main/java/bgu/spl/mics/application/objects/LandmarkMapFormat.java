@@ -0,0 +1,170 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary layout of a Fusion-SLAM map, read back through {@link LandmarkMapReader}.
+ * <pre>
+ * header   magic, version, flags, landmarkCount, pointCount(long), systemRuntime, numDetectedObjects,
+ *          numTrackedObjects, numLandmarks, stringTableBytes, dataStart(long)
+ * index    landmarkCount x (idOffset, idLength, descriptionOffset, descriptionLength, pointCount, dataOffset(long))
+ * strings  UTF-8 ids and descriptions, referenced by the index
+ * data     per landmark: x block, y block (float64, or float32 with FLAG_FLOAT32), observation counts (int32),
+ *          then variances (float64) with FLAG_VARIANCES; starting at dataStart
+ * </pre>
+ * As in {@link LiDarBinaryFormat}, the data region is mapped in windows of {@link #WINDOW_BYTES} and the
+ * writer pads so that no landmark crosses a window boundary.
+ */
+public class LandmarkMapFormat {
+    public static final int MAGIC = 0x4C4D4150; // "LMAP"
+    public static final int VERSION = 1;
+    public static final int FLAG_FLOAT32 = 1;
+    public static final int FLAG_VARIANCES = 2;
+    public static final int HEADER_BYTES = 52;
+    public static final int INDEX_ENTRY_BYTES = 28;
+    public static final int DATA_ALIGNMENT = 4096;
+    public static final long WINDOW_BYTES = 1L << 30;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private LandmarkMapFormat() {
+    }
+
+    /**
+     * Writes {@code landmarks} and the run statistics to {@code path}. Variances are written if any
+     * landmark tracks them (0 for those that do not).
+     */
+    public static void write(Path path, int systemRuntime, int numDetectedObjects, int numTrackedObjects, int numLandmarks,
+                             List<LandMark> landmarks, boolean float32) throws IOException {
+        int count = landmarks.size();
+        int[] pointCounts = new int[count];
+        boolean variances = false;
+        for (int i = 0; i < count; i++) {
+            pointCounts[i] = landmarks.get(i).getPointCount();
+            variances |= landmarks.get(i).isVarianceTracked();
+        }
+        int flags = (float32 ? FLAG_FLOAT32 : 0) | (variances ? FLAG_VARIANCES : 0);
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(count * INDEX_ENTRY_BYTES);
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        Map<String, int[]> strings = new HashMap<>();
+        long pointCount = 0;
+        long dataOffset = 0;
+        long[] padding = new long[count];
+        for (int i = 0; i < count; i++) {
+            LandMark landmark = landmarks.get(i);
+            int[] id = intern(landmark.getId(), strings, stringBytes);
+            int[] description = intern(landmark.getDescription(), strings, stringBytes);
+            long size = landmarkBytes(pointCounts[i], flags);
+            if (size > WINDOW_BYTES) {
+                throw new IOException("Landmark " + landmark.getId() + " is too large to map");
+            }
+            long windowEnd = (dataOffset / WINDOW_BYTES + 1) * WINDOW_BYTES;
+            if (dataOffset + size > windowEnd) {
+                padding[i] = windowEnd - dataOffset;
+                dataOffset = windowEnd;
+            }
+            index.writeInt(id[0]);
+            index.writeInt(id[1]);
+            index.writeInt(description[0]);
+            index.writeInt(description[1]);
+            index.writeInt(pointCounts[i]);
+            index.writeLong(dataOffset);
+            dataOffset += size;
+            pointCount += pointCounts[i];
+        }
+
+        long metadataBytes = HEADER_BYTES + (long) indexBytes.size() + stringBytes.size();
+        long dataStart = (metadataBytes + DATA_ALIGNMENT - 1) / DATA_ALIGNMENT * DATA_ALIGNMENT;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(flags);
+            out.writeInt(count);
+            out.writeLong(pointCount);
+            out.writeInt(systemRuntime);
+            out.writeInt(numDetectedObjects);
+            out.writeInt(numTrackedObjects);
+            out.writeInt(numLandmarks);
+            out.writeInt(stringBytes.size());
+            out.writeLong(dataStart);
+            indexBytes.writeTo(out);
+            stringBytes.writeTo(out);
+            pad(out, dataStart - metadataBytes);
+
+            for (int i = 0; i < count; i++) {
+                pad(out, padding[i]);
+                writeLandmark(out, landmarks.get(i), pointCounts[i], flags);
+            }
+        }
+    }
+
+    /**
+     * @return the size of a landmark's block in the data region.
+     */
+    public static long landmarkBytes(int pointCount, int flags) {
+        int coordinateBytes = (flags & FLAG_FLOAT32) != 0 ? Float.BYTES : Double.BYTES;
+        int varianceBytes = (flags & FLAG_VARIANCES) != 0 ? Double.BYTES : 0;
+        return (long) pointCount * (2 * coordinateBytes + Integer.BYTES + varianceBytes);
+    }
+
+    private static void writeLandmark(DataOutputStream out, LandMark landmark, int points, int flags) throws IOException {
+        boolean float32 = (flags & FLAG_FLOAT32) != 0;
+        for (int i = 0; i < points; i++) {
+            if (float32) {
+                out.writeFloat((float) landmark.getX(i));
+            } else {
+                out.writeDouble(landmark.getX(i));
+            }
+        }
+        for (int i = 0; i < points; i++) {
+            if (float32) {
+                out.writeFloat((float) landmark.getY(i));
+            } else {
+                out.writeDouble(landmark.getY(i));
+            }
+        }
+        for (int i = 0; i < points; i++) {
+            out.writeInt(landmark.getObservations(i));
+        }
+        if ((flags & FLAG_VARIANCES) != 0) {
+            for (int i = 0; i < points; i++) {
+                out.writeDouble(landmark.isVarianceTracked() ? landmark.getVariance(i) : 0);
+            }
+        }
+    }
+
+    /**
+     * @return {offset, length} of {@code value} in the string table, adding it on first use.
+     */
+    private static int[] intern(String value, Map<String, int[]> strings, ByteArrayOutputStream table) {
+        String key = value == null ? "" : value;
+        int[] location = strings.get(key);
+        if (location == null) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            location = new int[]{table.size(), bytes.length};
+            table.write(bytes, 0, bytes.length);
+            strings.put(key, location);
+        }
+        return location;
+    }
+
+    private static void pad(DataOutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.writeByte(0);
+        }
+    }
+}
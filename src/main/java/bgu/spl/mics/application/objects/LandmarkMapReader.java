@@ -0,0 +1,228 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Random access to a {@link LandmarkMapFormat} file through memory mapping. Opening the file reads
+ * only the header; landmarks are decoded when asked for and the OS pages them in on first access.
+ * The reader may be shared between threads.
+ */
+public class LandmarkMapReader {
+    private final Path path;
+    private final int flags;
+    private final int landmarkCount;
+    private final long pointCount;
+    private final int systemRuntime;
+    private final int numDetectedObjects;
+    private final int numTrackedObjects;
+    private final int numLandmarks;
+    private final ByteBuffer index;
+    private final ByteBuffer strings;
+    private final MappedByteBuffer[] windows;
+    private volatile Map<String, Integer> idIndex;
+
+    private LandmarkMapReader(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, LandmarkMapFormat.HEADER_BYTES);
+        if (header.getInt() != LandmarkMapFormat.MAGIC) {
+            throw new IOException("Not a binary map file: " + path);
+        }
+        int version = header.getInt();
+        if (version != LandmarkMapFormat.VERSION) {
+            throw new IOException("Unsupported binary map version " + version + " in " + path);
+        }
+        this.flags = header.getInt();
+        this.landmarkCount = header.getInt();
+        this.pointCount = header.getLong();
+        this.systemRuntime = header.getInt();
+        this.numDetectedObjects = header.getInt();
+        this.numTrackedObjects = header.getInt();
+        this.numLandmarks = header.getInt();
+        int stringTableBytes = header.getInt();
+        long dataStart = header.getLong();
+
+        long indexBytes = (long) landmarkCount * LandmarkMapFormat.INDEX_ENTRY_BYTES;
+        this.index = channel.map(FileChannel.MapMode.READ_ONLY, LandmarkMapFormat.HEADER_BYTES, indexBytes);
+        this.strings = channel.map(FileChannel.MapMode.READ_ONLY, LandmarkMapFormat.HEADER_BYTES + indexBytes, stringTableBytes);
+
+        long dataBytes = channel.size() - dataStart;
+        int windowCount = (int) ((dataBytes + LandmarkMapFormat.WINDOW_BYTES - 1) / LandmarkMapFormat.WINDOW_BYTES);
+        this.windows = new MappedByteBuffer[windowCount];
+        for (int w = 0; w < windowCount; w++) {
+            long start = w * LandmarkMapFormat.WINDOW_BYTES;
+            windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + start,
+                    Math.min(LandmarkMapFormat.WINDOW_BYTES, dataBytes - start));
+        }
+    }
+
+    /**
+     * Maps the file at {@code path}. The mapping stays valid after the file is closed.
+     */
+    public static LandmarkMapReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new LandmarkMapReader(path, channel);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    public long getTotalPointCount() {
+        return pointCount;
+    }
+
+    public boolean isFloat32() {
+        return (flags & LandmarkMapFormat.FLAG_FLOAT32) != 0;
+    }
+
+    public boolean hasVariances() {
+        return (flags & LandmarkMapFormat.FLAG_VARIANCES) != 0;
+    }
+
+    public int getSystemRuntime() {
+        return systemRuntime;
+    }
+
+    public int getNumDetectedObjects() {
+        return numDetectedObjects;
+    }
+
+    public int getNumTrackedObjects() {
+        return numTrackedObjects;
+    }
+
+    public int getNumLandmarks() {
+        return numLandmarks;
+    }
+
+    public String getId(int landmark) {
+        int entry = entry(landmark);
+        return string(index.getInt(entry), index.getInt(entry + 4));
+    }
+
+    public String getDescription(int landmark) {
+        int entry = entry(landmark);
+        return string(index.getInt(entry + 8), index.getInt(entry + 12));
+    }
+
+    public int getPointCount(int landmark) {
+        return index.getInt(entry(landmark) + 16);
+    }
+
+    public double getX(int landmark, int point) {
+        return coordinate(landmark, point, 0);
+    }
+
+    public double getY(int landmark, int point) {
+        return coordinate(landmark, point, 1);
+    }
+
+    public int getObservations(int landmark, int point) {
+        int points = getPointCount(landmark);
+        return window(landmark).getInt(position(landmark) + points * 2 * coordinateBytes() + point * Integer.BYTES);
+    }
+
+    /**
+     * @return the variance of the observations of the point, or NaN if the file has no variances.
+     */
+    public double getVariance(int landmark, int point) {
+        if (!hasVariances()) {
+            return Double.NaN;
+        }
+        int points = getPointCount(landmark);
+        return window(landmark).getDouble(position(landmark)
+                + points * (2 * coordinateBytes() + Integer.BYTES) + point * Double.BYTES);
+    }
+
+    /**
+     * @return the position of the landmark with {@code id}, or -1. The first call builds an id index.
+     */
+    public int indexOf(String id) {
+        Map<String, Integer> ids = idIndex;
+        if (ids == null) {
+            synchronized (this) {
+                ids = idIndex;
+                if (ids == null) {
+                    ids = new HashMap<>(landmarkCount * 2);
+                    for (int i = 0; i < landmarkCount; i++) {
+                        ids.put(getId(i), i);
+                    }
+                    idIndex = ids;
+                }
+            }
+        }
+        Integer position = ids.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Decodes a landmark, keeping the observation count (and variance, if present) of every point,
+     * so fusing further observations into it continues the same running mean.
+     */
+    public LandMark getLandmark(int landmark) {
+        int points = getPointCount(landmark);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        int[] observations = new int[points];
+        double[] variances = hasVariances() ? new double[points] : null;
+        for (int i = 0; i < points; i++) {
+            xs[i] = getX(landmark, i);
+            ys[i] = getY(landmark, i);
+            observations[i] = getObservations(landmark, i);
+            if (variances != null) {
+                variances[i] = getVariance(landmark, i);
+            }
+        }
+        return new LandMark(getId(landmark), getDescription(landmark), xs, ys, observations, variances, points);
+    }
+
+    private int entry(int landmark) {
+        if (landmark < 0 || landmark >= landmarkCount) {
+            throw new IndexOutOfBoundsException("Landmark " + landmark + " of " + landmarkCount);
+        }
+        return landmark * LandmarkMapFormat.INDEX_ENTRY_BYTES;
+    }
+
+    private long dataOffset(int landmark) {
+        return index.getLong(entry(landmark) + 20);
+    }
+
+    private ByteBuffer window(int landmark) {
+        return windows[(int) (dataOffset(landmark) / LandmarkMapFormat.WINDOW_BYTES)];
+    }
+
+    private int position(int landmark) {
+        return (int) (dataOffset(landmark) % LandmarkMapFormat.WINDOW_BYTES);
+    }
+
+    private int coordinateBytes() {
+        return isFloat32() ? Float.BYTES : Double.BYTES;
+    }
+
+    private double coordinate(int landmark, int point, int axis) {
+        int at = position(landmark) + (axis * getPointCount(landmark) + point) * coordinateBytes();
+        ByteBuffer data = window(landmark);
+        return isFloat32() ? data.getFloat(at) : data.getDouble(at);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = strings.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,168 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The landmarks of the map, indexed by {@link ObjectIds} symbol for O(1) lookup and kept in
+ * insertion order for output. Writers synchronize on the registry; readers never lock and see
+ * a landmark as soon as it has been added. Iterators and {@code toArray} work on the landmarks
+ * present when they were created, so copying the list while landmarks are added never fails.
+ */
+public class LandmarkRegistry extends AbstractList<LandMark> implements LandmarkStore, RandomAccess {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile LandMark[] bySymbol;
+    private volatile LandMark[] inOrder;
+    private volatile int size;
+
+    public LandmarkRegistry() {
+        this.bySymbol = new LandMark[Math.max(INITIAL_CAPACITY, ObjectIds.size())];
+        this.inOrder = new LandMark[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return the landmark of the given symbol, or null.
+     */
+    @Override
+    public LandMark getBySymbol(int symbol) {
+        LandMark[] index = bySymbol;
+        return symbol >= 0 && symbol < index.length ? index[symbol] : null;
+    }
+
+    @Override
+    public boolean containsSymbol(int symbol) {
+        return getBySymbol(symbol) != null;
+    }
+
+    /**
+     * Adds {@code landmark} unless a landmark with the same id is already registered.
+     *
+     * @return the registered landmark with that id, or null if {@code landmark} was added.
+     */
+    @Override
+    public synchronized LandMark putIfAbsent(LandMark landmark) {
+        int symbol = landmark.getSymbol();
+        LandMark existing = getBySymbol(symbol);
+        if (existing != null) {
+            return existing;
+        }
+        LandMark[] index = bySymbol;
+        if (symbol >= index.length) {
+            index = Arrays.copyOf(index, Math.max(symbol + 1, index.length * 2));
+        }
+        int n = size;
+        LandMark[] order = inOrder;
+        if (n == order.length) {
+            order = Arrays.copyOf(order, n * 2);
+        }
+        order[n] = landmark;
+        index[symbol] = landmark;
+        inOrder = order;
+        bySymbol = index;
+        size = n + 1;
+        return null;
+    }
+
+    @Override
+    public void mergeCoordinates(int symbol, double[] xs, double[] ys, int count) {
+        getBySymbol(symbol).mergeCoordinates(xs, ys, count);
+    }
+
+    @Override
+    public boolean holdsLandmarks() {
+        return true;
+    }
+
+    /**
+     * Adds {@code landmark}. Unlike a plain list, the registry holds one landmark per id: if the id is
+     * already registered, nothing is added and false is returned.
+     */
+    @Override
+    public boolean add(LandMark landmark) {
+        return putIfAbsent(landmark) == null;
+    }
+
+    @Override
+    public LandMark get(int index) {
+        int n = size;
+        LandMark[] order = inOrder;
+        if (index < 0 || index >= n || index >= order.length || order[index] == null) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+        }
+        return order[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        bySymbol = new LandMark[bySymbol.length];
+        inOrder = new LandMark[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    @Override
+    public Iterator<LandMark> iterator() {
+        int n = size;
+        LandMark[] order = inOrder;
+        int count = snapshotLength(order, n);
+        return new Iterator<LandMark>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public LandMark next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return order[next++];
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        int n = size;
+        LandMark[] order = inOrder;
+        return Arrays.copyOf(order, snapshotLength(order, n), Object[].class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        int n = size;
+        LandMark[] order = inOrder;
+        int count = snapshotLength(order, n);
+        if (array.length < count) {
+            return (T[]) Arrays.copyOf(order, count, array.getClass());
+        }
+        System.arraycopy(order, 0, array, 0, count);
+        if (array.length > count) {
+            array[count] = null;
+        }
+        return array;
+    }
+
+    /**
+     * @return how many of the first {@code n} entries of {@code order} are filled. Less than {@code n}
+     *         only if the registry was cleared between reading the size and the array.
+     */
+    private static int snapshotLength(LandMark[] order, int n) {
+        int count = Math.min(n, order.length);
+        while (count > 0 && order[count - 1] == null) {
+            count--;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,367 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniform grid over the landmarks' bounding boxes, for "landmarks within r of (x, y)" and
+ * "k nearest landmarks" queries. A landmark is registered in every cell its bounding box touches
+ * (or, if that is more than {@link #MAX_CELLS_PER_LANDMARK} cells, in a short list checked by every
+ * query). Queries measure the distance to the closest point of a landmark, using a snapshot of its
+ * points taken at its last update, so they never lock and never see a half-merged landmark.
+ * <p>
+ * Queries may run on any thread. Updates of one landmark must not run concurrently with each other;
+ * Fusion-SLAM calls {@link #update(LandMark)} under the landmark's lock.
+ */
+public class LandmarkSpatialIndex {
+    public static final int MAX_CELLS_PER_LANDMARK = 64;
+
+    private final double cellSize;
+    private final Map<Long, Set<Integer>> cells;
+    private final Map<Integer, Entry> entries;
+    private final Set<Integer> oversized;
+    private final double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+
+    /**
+     * @param cellSize Edge length of a grid cell, in map units. About the size of a typical landmark works well.
+     */
+    public LandmarkSpatialIndex(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellSize = cellSize;
+        this.cells = new ConcurrentHashMap<>();
+        this.entries = new ConcurrentHashMap<>();
+        this.oversized = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Re-indexes {@code landmark} after it was added or its coordinates changed.
+     */
+    public void update(LandMark landmark) {
+        int count = landmark.getPointCount();
+        if (count == 0) {
+            return;
+        }
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            xs[i] = landmark.getX(i);
+            ys[i] = landmark.getY(i);
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        Entry entry = new Entry(landmark, xs, ys, cell(minX), cell(minY), cell(maxX), cell(maxY));
+        int symbol = landmark.getSymbol();
+        Entry previous = entries.put(symbol, entry);
+        if (previous == null || !previous.sameCells(entry)) {
+            if (previous != null) {
+                unlink(symbol, previous);
+            }
+            link(symbol, entry);
+        }
+        synchronized (bounds) {
+            bounds[0] = Math.min(bounds[0], minX);
+            bounds[1] = Math.min(bounds[1], minY);
+            bounds[2] = Math.max(bounds[2], maxX);
+            bounds[3] = Math.max(bounds[3], maxY);
+        }
+    }
+
+    public void remove(LandMark landmark) {
+        Entry previous = entries.remove(landmark.getSymbol());
+        if (previous != null) {
+            unlink(landmark.getSymbol(), previous);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the landmarks with at least one point within {@code radius} of (x, y), closest first.
+     */
+    public List<LandMark> withinRadius(double x, double y, double radius) {
+        List<Hit> hits = collect(x, y, radius);
+        Collections.sort(hits, Comparator.comparingDouble(hit -> hit.distance));
+        return landmarks(hits, hits.size());
+    }
+
+    /**
+     * @return up to {@code k} landmarks ordered by the distance of their closest point to (x, y).
+     * <p>
+     * Visits the grid in rings of cells around (x, y), starting with the first ring that reaches the
+     * occupied bounds, and stops once the k-th landmark found is closer than anything the next ring
+     * could hold. If the rings would visit more cells than are occupied, the occupied cells are scanned instead.
+     */
+    public List<LandMark> nearest(double x, double y, int k) {
+        if (k <= 0 || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long[] occupied = occupiedCells();
+        List<Hit> hits = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (Integer symbol : oversized) {
+            check(symbol, x, y, Double.MAX_VALUE, seen, hits);
+        }
+        long centerX = cell(x);
+        long centerY = cell(y);
+        long budget = cells.size();
+        long visited = 0;
+        // Rings closer than the Chebyshev cell distance to the occupied bounds hold no cells to visit.
+        long firstRing = Math.max(0, Math.max(Math.max(occupied[0] - centerX, centerX - occupied[2]),
+                Math.max(occupied[1] - centerY, centerY - occupied[3])));
+        for (long ring = firstRing; ; ring++) {
+            if (centerX - ring <= occupied[0] && centerY - ring <= occupied[1]
+                    && centerX + ring >= occupied[2] && centerY + ring >= occupied[3]) {
+                visited += visitRing(centerX, centerY, ring, occupied, x, y, seen, hits);
+                return closest(hits, k);
+            }
+            visited += visitRing(centerX, centerY, ring, occupied, x, y, seen, hits);
+            if (visited > budget) {
+                return closest(scanOccupied(x, y, Double.MAX_VALUE, null), k);
+            }
+            if (hits.size() >= k) {
+                Collections.sort(hits, Comparator.comparingDouble(hit -> hit.distance));
+                // Cells of the next ring are at least ring * cellSize away from (x, y).
+                if (hits.get(k - 1).distance <= ring * cellSize) {
+                    return landmarks(hits, k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the cells at Chebyshev distance {@code ring} from the center cell that lie within the occupied range.
+     *
+     * @return the number of cells looked up.
+     */
+    private long visitRing(long centerX, long centerY, long ring, long[] occupied, double x, double y,
+                           Set<Integer> seen, List<Hit> hits) {
+        long fromX = Math.max(centerX - ring, occupied[0]);
+        long toX = Math.min(centerX + ring, occupied[2]);
+        long fromY = Math.max(centerY - ring + 1, occupied[1]);
+        long toY = Math.min(centerY + ring - 1, occupied[3]);
+        long visited = 0;
+        long[] rows = ring == 0 ? new long[]{centerY} : new long[]{centerY - ring, centerY + ring};
+        for (long cy : rows) {
+            if (cy < occupied[1] || cy > occupied[3]) {
+                continue;
+            }
+            for (long cx = fromX; cx <= toX; cx++) {
+                visitCell(cx, cy, x, y, Double.MAX_VALUE, seen, hits);
+                visited++;
+            }
+        }
+        if (ring > 0) {
+            for (long cx : new long[]{centerX - ring, centerX + ring}) {
+                if (cx < occupied[0] || cx > occupied[2]) {
+                    continue;
+                }
+                for (long cy = fromY; cy <= toY; cy++) {
+                    visitCell(cx, cy, x, y, Double.MAX_VALUE, seen, hits);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    private static List<LandMark> closest(List<Hit> hits, int k) {
+        Collections.sort(hits, Comparator.comparingDouble(hit -> hit.distance));
+        return landmarks(hits, Math.min(k, hits.size()));
+    }
+
+    /**
+     * Collects the landmarks within {@code radius}. The cell range is clamped to the occupied bounds,
+     * and if it still holds more cells than are occupied, the occupied cells are scanned instead.
+     */
+    private List<Hit> collect(double x, double y, double radius) {
+        long[] occupied = occupiedCells();
+        long[] range = {
+                Math.max(cell(x - radius), occupied[0]), Math.max(cell(y - radius), occupied[1]),
+                Math.min(cell(x + radius), occupied[2]), Math.min(cell(y + radius), occupied[3])};
+        if (range[0] > range[2] || range[1] > range[3]) {
+            List<Hit> hits = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+            for (Integer symbol : oversized) {
+                check(symbol, x, y, radius, seen, hits);
+            }
+            return hits;
+        }
+        if ((range[2] - range[0] + 1) * (range[3] - range[1] + 1) > cells.size()) {
+            return scanOccupied(x, y, radius, range);
+        }
+        List<Hit> hits = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (long cx = range[0]; cx <= range[2]; cx++) {
+            for (long cy = range[1]; cy <= range[3]; cy++) {
+                visitCell(cx, cy, x, y, radius, seen, hits);
+            }
+        }
+        for (Integer symbol : oversized) {
+            check(symbol, x, y, radius, seen, hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Checks the landmarks of every occupied cell inside {@code range} (all of them if null), and the oversized ones.
+     */
+    private List<Hit> scanOccupied(double x, double y, double radius, long[] range) {
+        List<Hit> hits = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (Map.Entry<Long, Set<Integer>> cell : cells.entrySet()) {
+            long key = cell.getKey();
+            long cx = key >> 32;
+            long cy = (int) key;
+            if (range != null && (cx < range[0] || cx > range[2] || cy < range[1] || cy > range[3])) {
+                continue;
+            }
+            for (Integer symbol : cell.getValue()) {
+                check(symbol, x, y, radius, seen, hits);
+            }
+        }
+        for (Integer symbol : oversized) {
+            check(symbol, x, y, radius, seen, hits);
+        }
+        return hits;
+    }
+
+    private void visitCell(long cx, long cy, double x, double y, double radius, Set<Integer> seen, List<Hit> hits) {
+        Set<Integer> symbols = cells.get(key(cx, cy));
+        if (symbols != null) {
+            for (Integer symbol : symbols) {
+                check(symbol, x, y, radius, seen, hits);
+            }
+        }
+    }
+
+    /**
+     * @return {minCellX, minCellY, maxCellX, maxCellY} of every landmark indexed so far.
+     */
+    private long[] occupiedCells() {
+        synchronized (bounds) {
+            return new long[]{cell(bounds[0]), cell(bounds[1]), cell(bounds[2]), cell(bounds[3])};
+        }
+    }
+
+    private void check(Integer symbol, double x, double y, double radius, Set<Integer> seen, List<Hit> hits) {
+        if (!seen.add(symbol)) {
+            return;
+        }
+        Entry entry = entries.get(symbol);
+        if (entry == null) {
+            return;
+        }
+        double distance = entry.distanceTo(x, y);
+        if (distance <= radius) {
+            hits.add(new Hit(entry.landmark, distance));
+        }
+    }
+
+    private static List<LandMark> landmarks(List<Hit> hits, int count) {
+        List<LandMark> landmarks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            landmarks.add(hits.get(i).landmark);
+        }
+        return landmarks;
+    }
+
+    private void link(int symbol, Entry entry) {
+        if (entry.cellCount() > MAX_CELLS_PER_LANDMARK) {
+            oversized.add(symbol);
+            return;
+        }
+        for (long cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (long cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> ConcurrentHashMap.newKeySet()).add(symbol);
+            }
+        }
+    }
+
+    private void unlink(int symbol, Entry entry) {
+        if (entry.cellCount() > MAX_CELLS_PER_LANDMARK) {
+            oversized.remove(symbol);
+            return;
+        }
+        for (long cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (long cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                Set<Integer> symbols = cells.get(key(cx, cy));
+                if (symbols != null) {
+                    symbols.remove(symbol);
+                }
+            }
+        }
+    }
+
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+
+    private static final class Entry {
+        private final LandMark landmark;
+        private final double[] xs;
+        private final double[] ys;
+        private final long minCellX;
+        private final long minCellY;
+        private final long maxCellX;
+        private final long maxCellY;
+
+        Entry(LandMark landmark, double[] xs, double[] ys, long minCellX, long minCellY, long maxCellX, long maxCellY) {
+            this.landmark = landmark;
+            this.xs = xs;
+            this.ys = ys;
+            this.minCellX = minCellX;
+            this.minCellY = minCellY;
+            this.maxCellX = maxCellX;
+            this.maxCellY = maxCellY;
+        }
+
+        long cellCount() {
+            return (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        }
+
+        boolean sameCells(Entry other) {
+            return minCellX == other.minCellX && minCellY == other.minCellY
+                    && maxCellX == other.maxCellX && maxCellY == other.maxCellY;
+        }
+
+        double distanceTo(double x, double y) {
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < xs.length; i++) {
+                double dx = xs[i] - x;
+                double dy = ys[i] - y;
+                best = Math.min(best, dx * dx + dy * dy);
+            }
+            return Math.sqrt(best);
+        }
+    }
+
+    private static final class Hit {
+        private final LandMark landmark;
+        private final double distance;
+
+        Hit(LandMark landmark, double distance) {
+            this.landmark = landmark;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * Where Fusion-SLAM keeps its landmarks: a list in insertion order (for output) that can also be
+ * addressed by {@link ObjectIds} symbol. {@link LandmarkRegistry} holds {@link LandMark} objects;
+ * {@link OffHeapLandmarkStore} holds the points outside the Java heap and hands out copies.
+ */
+public interface LandmarkStore extends List<LandMark> {
+
+    /**
+     * @return the landmark of the given symbol, or null. Stores that do not hold landmark objects return a copy.
+     */
+    LandMark getBySymbol(int symbol);
+
+    boolean containsSymbol(int symbol);
+
+    /**
+     * Adds {@code landmark} unless a landmark with the same id is already stored.
+     *
+     * @return the stored landmark with that id, or null if {@code landmark} was added.
+     */
+    LandMark putIfAbsent(LandMark landmark);
+
+    /**
+     * Fuses {@code count} observed points into the landmark of {@code symbol}, as
+     * {@link LandMark#updateCoordinates(double[], double[], int)} does. The caller excludes
+     * other writers of that landmark.
+     */
+    void mergeCoordinates(int symbol, double[] xs, double[] ys, int count);
+
+    /**
+     * @return true if {@link #getBySymbol(int)} returns the stored landmark itself, so holders of it
+     *         (the spatial index, the map delta log) see later updates.
+     */
+    boolean holdsLandmarks();
+}
@@ -0,0 +1,135 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary layout of a LiDAR recording, read through memory mapping.
+ * <pre>
+ * header   magic, version, flags, recordCount, pointCount(long), lastTime, stringTableBytes, dataStart(long)
+ * index    recordCount x (time, idOffset, idLength, pointCount, dataOffset(long))
+ * strings  UTF-8 object ids, referenced by the index
+ * data     interleaved x,y per record (float64, or float32 with FLAG_FLOAT32), starting at dataStart
+ * </pre>
+ * The data region is mapped in windows of {@link #WINDOW_BYTES}; the writer pads so that no record
+ * crosses a window boundary. Points are never parsed: slices read straight from the mapping and the
+ * OS pages them in on first access.
+ */
+public class LiDarBinaryFormat {
+    public static final int MAGIC = 0x4C445242; // "LDRB"
+    public static final int VERSION = 1;
+    public static final int FLAG_FLOAT32 = 1;
+    public static final int HEADER_BYTES = 40;
+    public static final int INDEX_ENTRY_BYTES = 24;
+    public static final int DATA_ALIGNMENT = 4096;
+    public static final long WINDOW_BYTES = 1L << 30;
+
+    private LiDarBinaryFormat() {
+    }
+
+    /**
+     * Maps a binary LiDAR file and passes every record to {@code sink}.
+     *
+     * @return the last time stamp found in the file.
+     */
+    public static int load(Path path, Consumer<StampedCloudPoints> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary LiDAR file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary LiDAR version " + version + " in " + path);
+            }
+            boolean float32 = (header.getInt() & FLAG_FLOAT32) != 0;
+            int recordCount = header.getInt();
+            header.getLong(); // point count, informational
+            int lastTime = header.getInt();
+            int stringTableBytes = header.getInt();
+            long dataStart = header.getLong();
+
+            long indexBytes = (long) recordCount * INDEX_ENTRY_BYTES;
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, indexBytes);
+            ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + indexBytes, stringTableBytes);
+
+            long dataBytes = channel.size() - dataStart;
+            int windowCount = (int) ((dataBytes + WINDOW_BYTES - 1) / WINDOW_BYTES);
+            MappedByteBuffer[] windows = new MappedByteBuffer[windowCount];
+            for (int w = 0; w < windowCount; w++) {
+                long start = w * WINDOW_BYTES;
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + start, Math.min(WINDOW_BYTES, dataBytes - start));
+            }
+
+            byte[] idBytes = new byte[64];
+            for (int r = 0; r < recordCount; r++) {
+                int time = index.getInt();
+                int idOffset = index.getInt();
+                int idLength = index.getInt();
+                int pointCount = index.getInt();
+                long dataOffset = index.getLong();
+
+                if (idBytes.length < idLength) {
+                    idBytes = new byte[idLength];
+                }
+                strings.position(idOffset);
+                strings.get(idBytes, 0, idLength);
+                String id = new String(idBytes, 0, idLength, StandardCharsets.UTF_8);
+
+                MappedByteBuffer window = pointCount == 0 ? null : windows[(int) (dataOffset / WINDOW_BYTES)];
+                int position = (int) (dataOffset % WINDOW_BYTES);
+                sink.accept(new StampedCloudPoints(id, time, new MappedSlice(window, position, pointCount, float32)));
+            }
+            return lastTime;
+        }
+    }
+
+    /**
+     * @return the number of bytes a point takes in the data region.
+     */
+    public static int bytesPerPoint(boolean float32) {
+        return float32 ? 2 * Float.BYTES : 2 * Double.BYTES;
+    }
+
+    private static final class MappedSlice extends CloudPointSlice {
+        private final ByteBuffer data;
+        private final int position;
+        private final int length;
+        private final boolean float32;
+
+        MappedSlice(ByteBuffer data, int position, int length, boolean float32) {
+            this.data = data;
+            this.position = position;
+            this.length = length;
+            this.float32 = float32;
+        }
+
+        @Override
+        public double getX(int index) {
+            int at = position + index * bytesPerPoint();
+            return float32 ? data.getFloat(at) : data.getDouble(at);
+        }
+
+        @Override
+        public double getY(int index) {
+            int at = position + index * bytesPerPoint();
+            return float32 ? data.getFloat(at + Float.BYTES) : data.getDouble(at + Double.BYTES);
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public int bytesPerPoint() {
+            return LiDarBinaryFormat.bytesPerPoint(float32);
+        }
+    }
+}
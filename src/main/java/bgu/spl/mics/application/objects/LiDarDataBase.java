@@ -1,23 +1,40 @@
 package bgu.spl.mics.application.objects;
 
+import bgu.spl.mics.application.input.ChunkedJsonArrayParser;
 import bgu.spl.mics.application.input.Configuration;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import bgu.spl.mics.application.input.SensorTypeAdapters;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.StreamSupport;
 
 public class LiDarDataBase {
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+
+    // time -> records in file order; appended to under the database lock
     private final Map<Integer, List<StampedCloudPoints>> Lidardata;
-    private int last = 0;
+    // time -> (object symbol -> cloud points); replaced as a whole when it grows
+    private volatile TimeIndex timeIndex;
+    private final BitSet errorTicks;
+    private volatile CloudPointStore pointStore;
+    private volatile int last = 0;
+    private volatile boolean live = false;
     private static LiDarDataBase instance;
 
+    // Retention: records older than every worker's release horizon are evicted.
+    private final Map<String, Integer> workerHorizons;
+    private volatile int retentionTicks = 0;
+    private volatile int evictedBefore = 0;
+
     public LiDarDataBase() {
         Lidardata = new ConcurrentHashMap<>();
+        timeIndex = new TimeIndex(0, INITIAL_INDEX_CAPACITY);
+        errorTicks = new BitSet();
+        pointStore = new CloudPointStore(false);
+        workerHorizons = new ConcurrentHashMap<>();
     }
 
     private static class SingletonHolder { ;
@@ -27,55 +44,322 @@ public class LiDarDataBase {
     public static LiDarDataBase getInstance() {
         return SingletonHolder.instance;
     }
-    public List<StampedCloudPoints> getStampedCloudPointsAtTime(int time) {
-        return Lidardata.getOrDefault(time, Collections.emptyList());
+    /**
+     * @return a copy of the records of {@code time}, in the order they were added.
+     */
+    public synchronized List<StampedCloudPoints> getStampedCloudPointsAtTime(int time) {
+        List<StampedCloudPoints> records = Lidardata.get(time);
+        return records == null ? Collections.emptyList() : new ArrayList<>(records);
+    }
+
+    /**
+     * Looks up the cloud points recorded for an object at a given time in O(1).
+     *
+     * @return the matching record, or null if the object was not scanned at that time.
+     */
+    public StampedCloudPoints getStampedCloudPoints(int time, String id) {
+        int symbol = ObjectIds.lookup(id);
+        return symbol == ObjectIds.NONE ? null : getStampedCloudPoints(time, symbol);
+    }
+
+    /**
+     * Same as {@link #getStampedCloudPoints(int, String)}, for an id already interned in {@link ObjectIds}.
+     */
+    public StampedCloudPoints getStampedCloudPoints(int time, int symbol) {
+        TickBucket objects = timeIndex.get(time);
+        return objects == null ? null : objects.get(symbol);
+    }
+
+    /**
+     * @return false if the records of {@code time} were already evicted by the retention policy,
+     *         in which case an empty lookup means "too late" rather than "nothing was scanned".
+     */
+    public boolean isRetained(int time) {
+        return time >= evictedBefore;
+    }
+
+    /**
+     * @return true if an "ERROR" record was scanned at the given time.
+     */
+    public boolean isErrorAt(int time) {
+        synchronized (errorTicks) {
+            return time >= 0 && errorTicks.get(time);
+        }
     }
 
     public int getLastTime() {
         return last;
     }
 
+    /**
+     * @return true while the LiDAR file is still being tailed, in which case the last
+     *         time is not final and workers should not terminate on it.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    public void setLive(boolean live) {
+        this.live = live;
+    }
+
+    /**
+     * Selects float32 point storage instead of float64. Only points added afterwards are affected,
+     * so this should be set before the data is loaded.
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        if (pointStore.isSinglePrecision() != singlePrecision) {
+            pointStore = new CloudPointStore(singlePrecision);
+        }
+    }
+
+    public CloudPointStore getPointStore() {
+        return pointStore;
+    }
+
+    /**
+     * Enables eviction of time buckets that no worker can still need.
+     *
+     * @param retentionTicks How many ticks a record is kept beyond a worker's own frequency, to cover
+     *                       the camera delay before its DetectObjectsEvent arrives. 0 keeps everything.
+     */
+    public void setRetention(int retentionTicks) {
+        this.retentionTicks = retentionTicks;
+    }
+
+    public int getRetention() {
+        return retentionTicks;
+    }
+
+    public void registerWorker(String workerId) {
+        workerHorizons.putIfAbsent(workerId, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Removes a terminated worker so it no longer holds data back.
+     */
+    public void unregisterWorker(String workerId) {
+        workerHorizons.remove(workerId);
+    }
+
+    /**
+     * Reports that a worker reached {@code currentTick}. Records older than
+     * {@code currentTick - frequency - retention} are no longer needed by it, and buckets older than the
+     * slowest worker's horizon are evicted.
+     */
+    public void releaseForWorker(String workerId, int currentTick, int frequency) {
+        int retention = retentionTicks;
+        if (retention <= 0) {
+            return;
+        }
+        workerHorizons.put(workerId, currentTick - frequency - retention);
+        int slowest = Integer.MAX_VALUE;
+        for (int horizon : workerHorizons.values()) {
+            slowest = Math.min(slowest, horizon);
+        }
+        if (slowest != Integer.MAX_VALUE && slowest > evictedBefore) {
+            evictBefore(slowest);
+        }
+    }
+
+    private synchronized void evictBefore(int time) {
+        TimeIndex index = timeIndex;
+        for (int t = evictedBefore; t < time; t++) {
+            Lidardata.remove(t);
+            index.clear(t);
+        }
+        evictedBefore = time;
+    }
+
 
     public void loadLidarData(String filePath) {
         try {
-            Gson gson = new Gson();
-            Type listType = new TypeToken<List<Map<String, Object>>>() {
-            }.getType();
-            try (FileReader reader = new FileReader(filePath)) {
-                List<Map<String, Object>> records = gson.fromJson(reader, listType);
-
-                for (Map<String, Object> record : records) {
-                    int time = ((Double) record.get("time")).intValue();
-                    String id = (String) record.get("id");
-                    List<List<Double>> cloudPointsRaw = (List<List<Double>>) record.get("cloudPoints");
-                    List<CloudPoint> cloudPoints = new ArrayList<>();
-
-                    for (List<Double> point : cloudPointsRaw) {
-                        double x = point.get(0);
-                        double y = point.get(1);
-                        cloudPoints.add(new CloudPoint(x, y));
-                    }
-
-                    StampedCloudPoints stampedCloudPoint = new StampedCloudPoints(id, time, cloudPoints);
-                    Lidardata.putIfAbsent(time, new ArrayList<>());
-                    Lidardata.get(time).add(stampedCloudPoint);
+            CloudPointStore store = pointStore;
+            List<StampedCloudPoints> records = ChunkedJsonArrayParser.parseFile(filePath,
+                    () -> new SensorTypeAdapters.StampedCloudPointsAdapter(store));
 
-                    if (time > last) {
-                        last = time;
-                    }
-                }
+            for (StampedCloudPoints record : records) {
+                addRecord(record);
             }
+            System.out.println("LiDar point storage: " + pointStore.footprintReport());
         } catch (Exception e) {
             System.err.println("Error loading LiDar data: " + e.getMessage());
         }
     }
 
+    /**
+     * Loads a recording converted by {@code LiDarBinaryConverter}. The file is memory-mapped,
+     * so only the index is decoded here; point data is paged in when a slice is read.
+     */
+    public void loadLidarBinary(String filePath) {
+        long start = System.nanoTime();
+        try {
+            int lastTime = LiDarBinaryFormat.load(Paths.get(filePath), this::addDetectedObject);
+            if (lastTime > last) {
+                last = lastTime;
+            }
+            System.out.println("LiDar binary data mapped in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Error loading LiDar binary data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a parsed LiDAR record and advances the last recorded time.
+     * Used both by the startup load and by the tail reader for appended records.
+     */
+    public void addRecord(StampedCloudPoints record) {
+        addDetectedObject(record);
+
+        if (record.getTime() > last) {
+            last = record.getTime();
+        }
+    }
+
     public void addDetectedObject(StampedCloudPoints stampedCloudPoints) {
         if (stampedCloudPoints != null) {
-            int timestamp = stampedCloudPoints.getTime();
+            index(stampedCloudPoints);
+        }
+    }
+
+    private synchronized void index(StampedCloudPoints stampedCloudPoints) {
+        int time = stampedCloudPoints.getTime();
+        Lidardata.computeIfAbsent(time, t -> new ArrayList<>()).add(stampedCloudPoints);
+        if (time < 0) {
+            return;
+        }
+        if (stampedCloudPoints.getSymbol() == ObjectIds.ERROR) {
+            synchronized (errorTicks) {
+                errorTicks.set(time);
+            }
+        }
+        if (time < evictedBefore) {
+            Lidardata.remove(time);
+            return;
+        }
+
+        TimeIndex index = timeIndex;
+        if (time >= index.end()) {
+            // Grow from the eviction point, so evicted slots are dropped instead of copied.
+            int base = evictedBefore;
+            int live = Math.max(INITIAL_INDEX_CAPACITY, index.end() - base);
+            TimeIndex grown = new TimeIndex(base, Math.max(time - base + 1, live * 2));
+            for (int t = Math.max(base, index.base); t < index.end(); t++) {
+                grown.set(t, index.get(t));
+            }
+            timeIndex = grown;
+            index = grown;
+        }
 
-            Lidardata.putIfAbsent(timestamp, new ArrayList<>());
-            Lidardata.get(timestamp).add(stampedCloudPoints);
+        TickBucket objects = index.get(time);
+        if (objects == null) {
+            objects = new TickBucket();
+            index.set(time, objects);
+        }
+        objects.putIfAbsent(stampedCloudPoints);
+    }
+
+    /**
+     * The records of one tick, in an open-addressing table keyed by object symbol (stored plus one, so 0
+     * marks a free slot) and kept at most half full. Writers hold the database lock and publish a new
+     * size after filling a slot; readers read the size first, then probe without locking.
+     */
+    private static final class TickBucket {
+        private static final class Table {
+            final int[] keys;
+            final StampedCloudPoints[] records;
+
+            Table(int capacity) {
+                this.keys = new int[capacity];
+                this.records = new StampedCloudPoints[capacity];
+            }
+        }
+
+        private volatile Table table = new Table(8);
+        private volatile int size;
+
+        StampedCloudPoints get(int symbol) {
+            if (size == 0) {
+                return null;
+            }
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int i = slot(symbol, mask); current.keys[i] != 0; i = (i + 1) & mask) {
+                if (current.keys[i] == symbol + 1) {
+                    return current.records[i];
+                }
+            }
+            return null;
+        }
+
+        void putIfAbsent(StampedCloudPoints record) {
+            int symbol = record.getSymbol();
+            if (get(symbol) != null) {
+                return;
+            }
+            int n = size;
+            Table current = table;
+            if ((n + 1) * 2 > current.keys.length) {
+                Table grown = new Table(current.keys.length * 2);
+                for (int i = 0; i < current.keys.length; i++) {
+                    if (current.keys[i] != 0) {
+                        insert(grown, current.keys[i] - 1, current.records[i]);
+                    }
+                }
+                insert(grown, symbol, record);
+                table = grown;
+            } else {
+                insert(current, symbol, record);
+            }
+            size = n + 1;
+        }
+
+        private static void insert(Table table, int symbol, StampedCloudPoints record) {
+            int mask = table.keys.length - 1;
+            int i = slot(symbol, mask);
+            while (table.keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table.records[i] = record;
+            table.keys[i] = symbol + 1;
+        }
+
+        private static int slot(int symbol, int mask) {
+            int h = symbol * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Tick-indexed slots starting at {@code base}. Readers use it without locking; writers hold the database lock.
+     */
+    private static final class TimeIndex {
+        private final int base;
+        private final AtomicReferenceArray<TickBucket> slots;
+
+        TimeIndex(int base, int capacity) {
+            this.base = base;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        int end() {
+            return base + slots.length();
+        }
+
+        TickBucket get(int time) {
+            int slot = time - base;
+            return slot < 0 || slot >= slots.length() ? null : slots.get(slot);
+        }
+
+        void set(int time, TickBucket objects) {
+            slots.set(time - base, objects);
+        }
+
+        void clear(int time) {
+            int slot = time - base;
+            if (slot >= 0 && slot < slots.length()) {
+                slots.set(slot, null);
+            }
         }
     }
-}
\ No newline at end of file
+}
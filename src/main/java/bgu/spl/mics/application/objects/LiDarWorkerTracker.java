@@ -13,6 +13,8 @@ public class LiDarWorkerTracker {
     private int frequency;
     private STATUS status;
     private List<TrackedObject> lastTrackedObjects;
+    private PointDownsampler downsampler;
+    private double pointQuantum;
 
 
     public LiDarWorkerTracker(String id, int frequency) {
@@ -26,19 +28,24 @@ public class LiDarWorkerTracker {
         if (detectedObjects == null || dataBase == null) {
             throw new NullPointerException("Detected objects or database is null");
         }
+        if (!dataBase.isRetained(detectionTime)) {
+            throw new IllegalStateException("LiDAR data for time " + detectionTime + " was already evicted");
+        }
         List<TrackedObject> trackedObjects = new ArrayList<>();
 
         for (DetectedObject detected : detectedObjects) {
-            List<StampedCloudPoints> stampedPoints = dataBase.getStampedCloudPointsAtTime(detectionTime);
-            for (StampedCloudPoints stampedCloudPoint : stampedPoints) {
-                if (stampedCloudPoint.getId().equals(detected.getId())) {
-                    TrackedObject trackedObject = new TrackedObject(
-                            detected,
-                            detectionTime,
-                            stampedCloudPoint.getCloudPoints()
-                    );
-                    trackedObjects.add(trackedObject);
+            StampedCloudPoints stampedCloudPoint = dataBase.getStampedCloudPoints(detectionTime, detected.getSymbol());
+            if (stampedCloudPoint != null) {
+                List<CloudPoint> points = stampedCloudPoint.getCloudPoints();
+                if (downsampler != null) {
+                    points = downsampler.apply(points);
                 }
+                TrackedObject trackedObject = new TrackedObject(
+                        detected,
+                        detectionTime,
+                        QuantizedCloudPoints.encode(points, pointQuantum)
+                );
+                trackedObjects.add(trackedObject);
             }
         }
         lastTrackedObjects = trackedObjects;
@@ -47,12 +54,9 @@ public class LiDarWorkerTracker {
     }
 
     public boolean detectError(int currentTime, LiDarDataBase dataBase) {
-        List<StampedCloudPoints> stampedCloudPointsList = dataBase.getStampedCloudPointsAtTime(currentTime);
-        for (StampedCloudPoints stampedCloudPoints : stampedCloudPointsList) {
-            if ("ERROR".equals(stampedCloudPoints.getId())) {
-                System.out.println("LiDAR Worker " + id + ": ERROR detected at time " + currentTime);
-                return true;
-            }
+        if (dataBase.isErrorAt(currentTime)) {
+            System.out.println("LiDAR Worker " + id + ": ERROR detected at time " + currentTime);
+            return true;
         }
 
         return false;
@@ -68,6 +72,24 @@ public class LiDarWorkerTracker {
         return frequency;
     }
 
+    /**
+     * @param downsampler Applied to the points of every tracked object, or null to forward raw points.
+     */
+    public void setDownsampler(PointDownsampler downsampler) {
+        this.downsampler = downsampler;
+    }
+
+    public PointDownsampler getDownsampler() {
+        return downsampler;
+    }
+
+    /**
+     * @param pointQuantum Precision of the compact point encoding of tracked objects, or 0 to keep full points.
+     */
+    public void setPointQuantum(double pointQuantum) {
+        this.pointQuantum = pointQuantum;
+    }
+
     public void setStatus(STATUS status) {
         this.status = status;
     }
@@ -0,0 +1,382 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the landmarks that changed during the run, so the map can be followed (and
+ * rebuilt at any recorded tick) while the simulation is still going.
+ * <p>
+ * Fusion-SLAM marks landmarks dirty as it fuses them. Every {@code intervalTicks} ticks the dirty
+ * landmarks are copied into a delta record; every {@code compactionRecords} records a full record
+ * replaces the file instead (written to a temporary file and renamed), so the log does not grow
+ * without bound. Records are encoded on the caller's thread and written by a background thread.
+ * <pre>
+ * record   magic, payloadBytes, payload, crc32(payload)
+ * payload  type (FULL or DELTA), tick, systemRuntime, numDetectedObjects, numTrackedObjects, numLandmarks,
+ *          landmarkCount, landmarkCount x (id, description, pointCount, xs, ys, observations, hasVariances, variances)
+ * </pre>
+ * A torn or corrupt record at the end of the file (a crash while appending) ends the replay.
+ */
+public class MapDeltaLog {
+    public static final int MAGIC = 0x4D444C47; // "MDLG"
+    public static final byte FULL = 1;
+    public static final byte DELTA = 2;
+    public static final int DEFAULT_COMPACTION_RECORDS = 16;
+
+    private final Path path;
+    private final int intervalTicks;
+    private final int compactionRecords;
+    private final Set<LandMark> dirty;
+    private final ExecutorService writer;
+    private FileChannel channel;
+    private int lastRecordTick;
+    private int lastSeenTick;
+    private int recordsSinceCompaction;
+    private volatile IOException failure;
+
+    /**
+     * Creates (or truncates) the log at {@code path}.
+     *
+     * @param compactionRecords number of records after which the next one is a full record; 0 for the default.
+     */
+    public MapDeltaLog(Path path, int intervalTicks, int compactionRecords) throws IOException {
+        if (intervalTicks <= 0) {
+            throw new IllegalArgumentException("Delta interval must be positive: " + intervalTicks);
+        }
+        this.path = path;
+        this.intervalTicks = intervalTicks;
+        this.compactionRecords = compactionRecords > 0 ? compactionRecords : DEFAULT_COMPACTION_RECORDS;
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "FusionSlam-delta-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Records that {@code landmark} was added or changed since the last record.
+     */
+    public void markDirty(LandMark landmark) {
+        dirty.add(landmark);
+    }
+
+    /**
+     * @return true if a record should be written at {@code tick}.
+     */
+    public synchronized boolean isDue(int tick) {
+        lastSeenTick = Math.max(lastSeenTick, tick);
+        return tick - lastRecordTick >= intervalTicks;
+    }
+
+    /**
+     * @return true if the next record should hold the full map instead of a delta.
+     */
+    public synchronized boolean isCompactionDue() {
+        return recordsSinceCompaction >= compactionRecords;
+    }
+
+    public synchronized int getLastSeenTick() {
+        return lastSeenTick;
+    }
+
+    /**
+     * Removes and returns the landmarks marked dirty so far. Landmarks changed after this call
+     * are marked again and go into the next record.
+     */
+    public List<LandMark> drainDirty() {
+        List<LandMark> drained = new ArrayList<>(dirty.size());
+        for (LandMark landmark : dirty) {
+            if (dirty.remove(landmark)) {
+                drained.add(landmark);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Encodes a record from {@code landmarks} (copies that no one modifies any more) and queues it for writing.
+     */
+    public synchronized void append(int tick, Collection<LandMark> landmarks, boolean full, StatisticalFolder statistics) {
+        byte[] record;
+        try {
+            record = encode(full ? FULL : DELTA, tick, landmarks, statistics);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode map delta at tick " + tick, e);
+        }
+        lastRecordTick = tick;
+        recordsSinceCompaction = full ? 0 : recordsSinceCompaction + 1;
+        writer.execute(() -> {
+            try {
+                if (full) {
+                    compact(record);
+                } else {
+                    write(channel, record);
+                }
+            } catch (IOException e) {
+                failure = e;
+                System.err.println("MapDeltaLog: Could not write record at tick " + tick + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits for the queued records and closes the file.
+     */
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("MapDeltaLog: Timed out waiting for queued records.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void compact(byte[] record) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(compacted, record);
+            compacted.force(true);
+        }
+        channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void write(FileChannel target, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    static byte[] encode(byte type, int tick, Collection<LandMark> landmarks, StatisticalFolder statistics) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeByte(type);
+        payload.writeInt(tick);
+        payload.writeInt(statistics.getSystemRuntime());
+        payload.writeInt(statistics.getNumDetectedObjects());
+        payload.writeInt(statistics.getNumTrackedObjects());
+        payload.writeInt(statistics.getNumLandmarks());
+        payload.writeInt(landmarks.size());
+        for (LandMark landmark : landmarks) {
+            writeLandmark(payload, landmark);
+        }
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(payloadBytes.toByteArray());
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(payloadBytes.size() + 12);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeInt(MAGIC);
+        record.writeInt(payloadBytes.size());
+        payloadBytes.writeTo(record);
+        record.writeInt((int) crc.getValue());
+        return recordBytes.toByteArray();
+    }
+
+    /**
+     * Rebuilds the map as it was recorded at the last record with a tick of at most {@code throughTick}.
+     *
+     * @return the map, or null if the log holds no such record.
+     */
+    public static Snapshot replay(Path path, int throughTick) throws IOException {
+        Snapshot snapshot = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = record.readByte();
+                int tick = record.readInt();
+                if (tick > throughTick) {
+                    break;
+                }
+                Snapshot next = new Snapshot(tick, record.readInt(), record.readInt(), record.readInt(), record.readInt(),
+                        type == FULL || snapshot == null ? new LinkedHashMap<>() : snapshot.landmarks);
+                int count = record.readInt();
+                for (int i = 0; i < count; i++) {
+                    LandMark landmark = readLandmark(record);
+                    next.landmarks.put(landmark.getId(), landmark);
+                }
+                snapshot = next;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the ticks of the readable records, in file order.
+     */
+    public static List<Integer> recordTicks(Path path) throws IOException {
+        List<Integer> ticks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                ticks.add(ByteBuffer.wrap(payload, 1, 4).getInt());
+            }
+        }
+        return ticks;
+    }
+
+    /**
+     * @return the payload of the next record, or null at the end of the file or at a torn or corrupt record.
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            int expected = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) {
+                System.err.println("MapDeltaLog: Corrupt record, replay stops here.");
+                return null;
+            }
+            return payload;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a landmark with its observation counts and variances; read back by {@link #readLandmark(DataInputStream)}.
+     */
+    static void writeLandmark(DataOutputStream out, LandMark landmark) throws IOException {
+        int points = landmark.getPointCount();
+        out.writeUTF(landmark.getId());
+        out.writeUTF(landmark.getDescription() == null ? "" : landmark.getDescription());
+        out.writeInt(points);
+        for (int i = 0; i < points; i++) {
+            out.writeDouble(landmark.getX(i));
+        }
+        for (int i = 0; i < points; i++) {
+            out.writeDouble(landmark.getY(i));
+        }
+        for (int i = 0; i < points; i++) {
+            out.writeInt(landmark.getObservations(i));
+        }
+        out.writeBoolean(landmark.isVarianceTracked());
+        if (landmark.isVarianceTracked()) {
+            for (int i = 0; i < points; i++) {
+                out.writeDouble(landmark.getVariance(i));
+            }
+        }
+    }
+
+    static LandMark readLandmark(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        String description = in.readUTF();
+        int points = in.readInt();
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        int[] observations = new int[points];
+        for (int i = 0; i < points; i++) {
+            xs[i] = in.readDouble();
+        }
+        for (int i = 0; i < points; i++) {
+            ys[i] = in.readDouble();
+        }
+        for (int i = 0; i < points; i++) {
+            observations[i] = in.readInt();
+        }
+        double[] variances = null;
+        if (in.readBoolean()) {
+            variances = new double[points];
+            for (int i = 0; i < points; i++) {
+                variances[i] = in.readDouble();
+            }
+        }
+        return new LandMark(id, description, xs, ys, observations, variances, points);
+    }
+
+    /**
+     * The map and statistics as of one record.
+     */
+    public static class Snapshot {
+        private final int tick;
+        private final int systemRuntime;
+        private final int numDetectedObjects;
+        private final int numTrackedObjects;
+        private final int numLandmarks;
+        private final Map<String, LandMark> landmarks;
+
+        Snapshot(int tick, int systemRuntime, int numDetectedObjects, int numTrackedObjects, int numLandmarks,
+                 Map<String, LandMark> landmarks) {
+            this.tick = tick;
+            this.systemRuntime = systemRuntime;
+            this.numDetectedObjects = numDetectedObjects;
+            this.numTrackedObjects = numTrackedObjects;
+            this.numLandmarks = numLandmarks;
+            this.landmarks = landmarks;
+        }
+
+        public int getTick() {
+            return tick;
+        }
+
+        public int getSystemRuntime() {
+            return systemRuntime;
+        }
+
+        public int getNumDetectedObjects() {
+            return numDetectedObjects;
+        }
+
+        public int getNumTrackedObjects() {
+            return numTrackedObjects;
+        }
+
+        public int getNumLandmarks() {
+            return numLandmarks;
+        }
+
+        /**
+         * @return the landmarks by id, in the order they were first recorded.
+         */
+        public Map<String, LandMark> getLandmarks() {
+            return landmarks;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global symbol table for object ids.
+ * Every id string is interned once into a dense int, so the pipeline compares and indexes by int
+ * and maps back to the string only for output. Symbols start at 1; 0 means "not interned yet",
+ * which is also what a reflectively created object holds in a transient symbol field.
+ */
+public final class ObjectIds {
+    public static final int NONE = 0;
+
+    private static final Map<String, Integer> symbols = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int next = 1;
+
+    public static final int ERROR = intern("ERROR");
+
+    private ObjectIds() {
+    }
+
+    /**
+     * @return the symbol of {@code id}, assigning the next free one on first sight; NONE for null.
+     */
+    public static int intern(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer symbol = symbols.get(id);
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (ObjectIds.class) {
+            symbol = symbols.get(id);
+            if (symbol == null) {
+                symbol = next++;
+                String[] current = names;
+                if (symbol >= current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[symbol] = id;
+                names = current;
+                symbols.put(id, symbol);
+            }
+            return symbol;
+        }
+    }
+
+    /**
+     * @return the symbol of {@code id}, or NONE if it was never interned. Unlike {@link #intern(String)}
+     *         this never assigns one, so looking up arbitrary ids does not grow the table.
+     */
+    public static int lookup(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer symbol = symbols.get(id);
+        return symbol == null ? NONE : symbol;
+    }
+
+    /**
+     * @return the id string of {@code symbol}, or null if it was never assigned.
+     */
+    public static String name(int symbol) {
+        String[] current = names;
+        return symbol > 0 && symbol < current.length ? current[symbol] : null;
+    }
+
+    /**
+     * @return one more than the largest assigned symbol, usable as the length of a symbol-indexed array.
+     */
+    public static int size() {
+        synchronized (ObjectIds.class) {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package bgu.spl.mics.application.objects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A {@link LandmarkStore} that keeps the points of every landmark in direct buffers, so a map of
+ * millions of landmarks adds almost nothing for the garbage collector to trace. The id index is a
+ * symbol-to-slot array and the slots are pages of block addresses; {@link LandMark} objects are only
+ * created when a landmark is read (output, checkpoints, lookups).
+ * <pre>
+ * block    header (symbol, description, size, capacity, flags, padding), then capacity x point
+ * point    x (float64), y (float64), sum of squared deviations (float64), observations (int32), padding
+ * </pre>
+ * Blocks are carved out of {@link #SLAB_BYTES} slabs; a landmark that outgrows its block moves to
+ * one twice the size and the old block is reused by the next landmark of that size.
+ * <p>
+ * Reading, merging into and moving a landmark hold the lock of its slot's stripe, so a copy never
+ * mixes points from before and after a merge, and a block is only freed (and so reused) while no
+ * reader can be holding its address.
+ */
+public class OffHeapLandmarkStore extends AbstractList<LandMark> implements LandmarkStore, RandomAccess {
+    public static final int SLAB_BYTES = 1 << 26;
+    private static final int RECORD_BYTES = 32;
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAX_CAPACITY = SLAB_BYTES / RECORD_BYTES / 2;
+    private static final int FLAG_VARIANCE = 1;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int LOCK_STRIPES = 64;
+
+    private volatile ByteBuffer[] slabs;
+    private int slabUsed;
+    private volatile int[] slotBySymbol;
+    private volatile long[][] addressPages;
+    private volatile int size;
+    private final List<String> descriptions;
+    private final Map<String, Integer> descriptionCodes;
+    private long[][] freeBlocks;
+    private int[] freeCounts;
+    private final Object[] slotLocks;
+
+    public OffHeapLandmarkStore() {
+        this.descriptions = new ArrayList<>();
+        this.descriptionCodes = new HashMap<>();
+        this.slotLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            slotLocks[i] = new Object();
+        }
+        reset();
+    }
+
+    private void reset() {
+        slabs = new ByteBuffer[0];
+        slabUsed = SLAB_BYTES;
+        slotBySymbol = new int[Math.max(64, ObjectIds.size())];
+        addressPages = new long[0][];
+        freeBlocks = new long[32][];
+        freeCounts = new int[32];
+        size = 0;
+    }
+
+    @Override
+    public LandMark getBySymbol(int symbol) {
+        int slot = slotOf(symbol);
+        return slot < 0 ? null : materialize(slot);
+    }
+
+    @Override
+    public boolean containsSymbol(int symbol) {
+        return slotOf(symbol) >= 0;
+    }
+
+    @Override
+    public LandMark putIfAbsent(LandMark landmark) {
+        int symbol = landmark.getSymbol();
+        synchronized (this) {
+            if (!containsSymbol(symbol)) {
+                append(landmark);
+                return null;
+            }
+        }
+        // copied outside the store lock: a copy takes a slot lock, and moving a landmark takes the store lock inside one
+        return getBySymbol(symbol);
+    }
+
+    /**
+     * Writes {@code landmark} to a new block and gives it the next slot. Called with the store locked.
+     */
+    private void append(LandMark landmark) {
+        int symbol = landmark.getSymbol();
+        int points = landmark.getPointCount();
+        int capacity = capacityFor(points);
+        long address = allocate(capacity);
+        ByteBuffer slab = slab(address);
+        int at = offset(address);
+        slab.putInt(at, symbol);
+        slab.putInt(at + 4, descriptionCode(landmark.getDescription()));
+        slab.putInt(at + 8, points);
+        slab.putInt(at + 12, capacity);
+        slab.putInt(at + 16, landmark.isVarianceTracked() ? FLAG_VARIANCE : 0);
+        for (int i = 0; i < points; i++) {
+            int point = at + (i + 1) * RECORD_BYTES;
+            int observations = landmark.getObservations(i);
+            slab.putDouble(point, landmark.getX(i));
+            slab.putDouble(point + 8, landmark.getY(i));
+            slab.putDouble(point + 16, landmark.isVarianceTracked() ? landmark.getVariance(i) * observations : 0);
+            slab.putInt(point + 24, observations);
+        }
+
+        int slot = size;
+        long[][] pages = addressPages;
+        if (slot >> PAGE_BITS >= pages.length) {
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = new long[PAGE_SIZE];
+        }
+        pages[slot >> PAGE_BITS][slot & (PAGE_SIZE - 1)] = address;
+        int[] index = slotBySymbol;
+        if (symbol >= index.length) {
+            index = Arrays.copyOf(index, Math.max(symbol + 1, index.length * 2));
+        }
+        index[symbol] = slot + 1;
+        addressPages = pages;
+        slotBySymbol = index;
+        size = slot + 1;
+    }
+
+    @Override
+    public void mergeCoordinates(int symbol, double[] xs, double[] ys, int count) {
+        int slot = slotOf(symbol);
+        synchronized (slotLocks[slot & (LOCK_STRIPES - 1)]) {
+            merge(slot, xs, ys, count);
+        }
+    }
+
+    private void merge(int slot, double[] xs, double[] ys, int count) {
+        long address = address(slot);
+        ByteBuffer slab = slab(address);
+        int at = offset(address);
+        if (count > slab.getInt(at + 12)) {
+            address = grow(slot, address, count);
+            slab = slab(address);
+            at = offset(address);
+        }
+        int points = slab.getInt(at + 8);
+        boolean variance = (slab.getInt(at + 16) & FLAG_VARIANCE) != 0;
+        for (int i = 0; i < count; i++) {
+            int point = at + (i + 1) * RECORD_BYTES;
+            if (i >= points) {
+                slab.putDouble(point, xs[i]);
+                slab.putDouble(point + 8, ys[i]);
+                slab.putDouble(point + 16, 0);
+                slab.putInt(point + 24, 1);
+                continue;
+            }
+            int n = slab.getInt(point + 24) + 1;
+            double meanX = slab.getDouble(point);
+            double meanY = slab.getDouble(point + 8);
+            double dx = xs[i] - meanX;
+            double dy = ys[i] - meanY;
+            meanX += dx / n;
+            meanY += dy / n;
+            slab.putDouble(point, meanX);
+            slab.putDouble(point + 8, meanY);
+            slab.putInt(point + 24, n);
+            if (variance) {
+                slab.putDouble(point + 16, slab.getDouble(point + 16) + dx * (xs[i] - meanX) + dy * (ys[i] - meanY));
+            }
+        }
+        slab.putInt(at + 8, Math.max(points, count));
+    }
+
+    @Override
+    public boolean holdsLandmarks() {
+        return false;
+    }
+
+    /**
+     * Adds {@code landmark}, unless a landmark with its id is already stored; then returns false.
+     */
+    @Override
+    public boolean add(LandMark landmark) {
+        return putIfAbsent(landmark) == null;
+    }
+
+    /**
+     * @return a copy of the landmark added {@code index}-th.
+     */
+    @Override
+    public LandMark get(int index) {
+        int n = size;
+        if (index < 0 || index >= n) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+        }
+        LandMark landmark = materialize(index);
+        if (landmark == null) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return landmark;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        clearStripes(0);
+    }
+
+    /**
+     * Takes every slot lock, then the store lock, in the order merges take them, and empties the store.
+     */
+    private void clearStripes(int stripe) {
+        if (stripe == LOCK_STRIPES) {
+            synchronized (this) {
+                reset();
+            }
+            return;
+        }
+        synchronized (slotLocks[stripe]) {
+            clearStripes(stripe + 1);
+        }
+    }
+
+    /**
+     * Iterates over copies of the landmarks stored when the iterator was created (fewer if the store is cleared meanwhile).
+     */
+    @Override
+    public Iterator<LandMark> iterator() {
+        int count = size;
+        return new Iterator<LandMark>() {
+            private int next;
+            private LandMark ahead = advance();
+
+            private LandMark advance() {
+                return next < count ? materialize(next++) : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ahead != null;
+            }
+
+            @Override
+            public LandMark next() {
+                if (ahead == null) {
+                    throw new NoSuchElementException();
+                }
+                LandMark landmark = ahead;
+                ahead = advance();
+                return landmark;
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        int count = size;
+        Object[] landmarks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = materialize(i);
+            if (landmarks[i] == null) {
+                return Arrays.copyOf(landmarks, i);
+            }
+        }
+        return landmarks;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        Object[] landmarks = toArray();
+        if (array.length < landmarks.length) {
+            return (T[]) Arrays.copyOf(landmarks, landmarks.length, array.getClass());
+        }
+        System.arraycopy(landmarks, 0, array, 0, landmarks.length);
+        if (array.length > landmarks.length) {
+            array[landmarks.length] = null;
+        }
+        return array;
+    }
+
+    /**
+     * @return bytes of direct memory held by the store.
+     */
+    public long getOffHeapBytes() {
+        return (long) slabs.length * SLAB_BYTES;
+    }
+
+    private int slotOf(int symbol) {
+        int[] index = slotBySymbol;
+        return symbol >= 0 && symbol < index.length ? index[symbol] - 1 : -1;
+    }
+
+    private long address(int slot) {
+        return addressPages[slot >> PAGE_BITS][slot & (PAGE_SIZE - 1)];
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * @return a copy of the landmark in {@code slot}, or null if the store was cleared and no longer has that slot.
+     */
+    private LandMark materialize(int slot) {
+        int symbol;
+        int code;
+        int points;
+        double[] xs;
+        double[] ys;
+        int[] observations;
+        double[] variances;
+        synchronized (slotLocks[slot & (LOCK_STRIPES - 1)]) {
+            if (slot >= size) {
+                return null;
+            }
+            long address = address(slot);
+            ByteBuffer slab = slab(address);
+            int at = offset(address);
+            symbol = slab.getInt(at);
+            code = slab.getInt(at + 4);
+            points = slab.getInt(at + 8);
+            boolean variance = (slab.getInt(at + 16) & FLAG_VARIANCE) != 0;
+            xs = new double[points];
+            ys = new double[points];
+            observations = new int[points];
+            variances = variance ? new double[points] : null;
+            for (int i = 0; i < points; i++) {
+                int point = at + (i + 1) * RECORD_BYTES;
+                xs[i] = slab.getDouble(point);
+                ys[i] = slab.getDouble(point + 8);
+                observations[i] = slab.getInt(point + 24);
+                if (variance) {
+                    variances[i] = slab.getDouble(point + 16) / observations[i];
+                }
+            }
+        }
+        String description;
+        synchronized (this) {
+            description = descriptions.get(code);
+        }
+        return new LandMark(ObjectIds.name(symbol), description, xs, ys, observations, variances, points);
+    }
+
+    /**
+     * Moves the landmark in {@code slot} to a block that holds {@code count} points. Called with the
+     * slot locked, so no reader holds the old block's address when it is freed.
+     */
+    private long grow(int slot, long address, int count) {
+        ByteBuffer from = slab(address);
+        int at = offset(address);
+        int oldCapacity = from.getInt(at + 12);
+        int capacity = capacityFor(Math.max(count, Math.min(oldCapacity * 2, MAX_CAPACITY)));
+        long moved;
+        synchronized (this) {
+            moved = allocate(capacity);
+            ByteBuffer to = slab(moved);
+            int target = offset(moved);
+            int bytes = (from.getInt(at + 8) + 1) * RECORD_BYTES;
+            for (int i = 0; i < bytes; i += Long.BYTES) {
+                to.putLong(target + i, from.getLong(at + i));
+            }
+            to.putInt(target + 12, capacity);
+            release(address, oldCapacity);
+            addressPages[slot >> PAGE_BITS][slot & (PAGE_SIZE - 1)] = moved;
+        }
+        return moved;
+    }
+
+    private static int capacityFor(int points) {
+        if (points > MAX_CAPACITY) {
+            throw new IllegalStateException("Landmark with " + points + " points does not fit in a slab");
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < points) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int sizeClass(int capacity) {
+        return 31 - Integer.numberOfLeadingZeros(capacity);
+    }
+
+    /**
+     * Takes a block for {@code capacity} points from the free list of its size, or from the current slab.
+     * Called with the store locked.
+     */
+    private long allocate(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        if (freeCounts[sizeClass] > 0) {
+            return freeBlocks[sizeClass][--freeCounts[sizeClass]];
+        }
+        int bytes = (capacity + 1) * RECORD_BYTES;
+        if (slabUsed + bytes > SLAB_BYTES) {
+            ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+            grown[grown.length - 1] = ByteBuffer.allocateDirect(SLAB_BYTES).order(ByteOrder.nativeOrder());
+            slabs = grown;
+            slabUsed = 0;
+        }
+        long address = ((long) (slabs.length - 1) << 32) | slabUsed;
+        slabUsed += bytes;
+        return address;
+    }
+
+    private void release(long address, int capacity) {
+        int sizeClass = sizeClass(capacity);
+        long[] free = freeBlocks[sizeClass];
+        if (free == null) {
+            free = freeBlocks[sizeClass] = new long[16];
+        } else if (freeCounts[sizeClass] == free.length) {
+            free = freeBlocks[sizeClass] = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCounts[sizeClass]++] = address;
+    }
+
+    private int descriptionCode(String description) {
+        String key = description == null ? "" : description;
+        Integer code = descriptionCodes.get(key);
+        if (code == null) {
+            code = descriptions.size();
+            descriptions.add(key);
+            descriptionCodes.put(key, code);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,160 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Tracked objects that reached Fusion-SLAM before the pose of their detection time.
+ * Batches are kept by detection time and released as soon as that pose is known. The buffer holds at
+ * most {@code limit} tracked objects (the oldest batch is dropped to make room), and a batch that is
+ * still waiting {@code expiryTicks} after its detection time is dropped.
+ */
+public class PendingTrackedObjects {
+    public static final int DEFAULT_LIMIT = 10_000;
+    public static final int DEFAULT_EXPIRY_TICKS = 64;
+
+    private final TreeMap<Integer, List<TrackedObject>> byDetectionTime;
+    private int limit;
+    private int expiryTicks;
+    private int pending;
+    private long buffered;
+    private long released;
+    private long expired;
+    private long overflowed;
+
+    public PendingTrackedObjects() {
+        this.byDetectionTime = new TreeMap<>();
+        this.limit = DEFAULT_LIMIT;
+        this.expiryTicks = DEFAULT_EXPIRY_TICKS;
+    }
+
+    /**
+     * @param limit       Maximum number of buffered tracked objects; 0 keeps the default.
+     * @param expiryTicks Ticks after its detection time a batch may wait; 0 keeps the default.
+     */
+    public synchronized void configure(int limit, int expiryTicks) {
+        if (limit > 0) {
+            this.limit = limit;
+        }
+        if (expiryTicks > 0) {
+            this.expiryTicks = expiryTicks;
+        }
+    }
+
+    public synchronized void add(List<TrackedObject> trackedObjects, int detectionTime) {
+        byDetectionTime.computeIfAbsent(detectionTime, time -> new ArrayList<>()).addAll(trackedObjects);
+        pending += trackedObjects.size();
+        buffered += trackedObjects.size();
+        while (pending > limit && !byDetectionTime.isEmpty()) {
+            Map.Entry<Integer, List<TrackedObject>> oldest = byDetectionTime.pollFirstEntry();
+            pending -= oldest.getValue().size();
+            overflowed += oldest.getValue().size();
+            System.err.println("Pending tracked objects over limit " + limit + ": dropped "
+                    + oldest.getValue().size() + " from time " + oldest.getKey());
+        }
+    }
+
+    /**
+     * Drops expired batches and removes every batch whose pose {@code poses} can now provide.
+     *
+     * @return the released batches, oldest first, each paired with its pose.
+     */
+    public synchronized List<Release> release(int currentTick, IntFunction<Pose> poses) {
+        List<Release> releases = new ArrayList<>();
+        Iterator<Map.Entry<Integer, List<TrackedObject>>> entries = byDetectionTime.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, List<TrackedObject>> entry = entries.next();
+            int size = entry.getValue().size();
+            Pose pose = poses.apply(entry.getKey());
+            if (pose != null) {
+                releases.add(new Release(entry.getKey(), entry.getValue(), pose));
+                released += size;
+            } else if (entry.getKey() + expiryTicks < currentTick) {
+                expired += size;
+                System.err.println("Pose for time " + entry.getKey() + " did not arrive within "
+                        + expiryTicks + " ticks: dropped " + size + " tracked objects");
+            } else {
+                continue;
+            }
+            pending -= size;
+            entries.remove();
+        }
+        return releases;
+    }
+
+    /**
+     * @return a copy of the buffered batches by detection time, for a checkpoint.
+     */
+    public synchronized TreeMap<Integer, List<TrackedObject>> snapshot() {
+        TreeMap<Integer, List<TrackedObject>> copy = new TreeMap<>();
+        for (Map.Entry<Integer, List<TrackedObject>> entry : byDetectionTime.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Puts batches from a checkpoint back into the buffer.
+     */
+    public synchronized void restore(Map<Integer, List<TrackedObject>> batches) {
+        for (Map.Entry<Integer, List<TrackedObject>> entry : batches.entrySet()) {
+            byDetectionTime.computeIfAbsent(entry.getKey(), time -> new ArrayList<>()).addAll(entry.getValue());
+            pending += entry.getValue().size();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return byDetectionTime.isEmpty();
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public synchronized long getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * @return tracked objects that never got a pose, because they expired or overflowed the buffer.
+     */
+    public synchronized long getDropped() {
+        return expired + overflowed;
+    }
+
+    public synchronized String report() {
+        return "buffered=" + buffered + " released=" + released + " expired=" + expired
+                + " overflowed=" + overflowed + " stillPending=" + pending;
+    }
+
+    /**
+     * A batch whose pose arrived.
+     */
+    public static class Release {
+        private final int detectionTime;
+        private final List<TrackedObject> trackedObjects;
+        private final Pose pose;
+
+        Release(int detectionTime, List<TrackedObject> trackedObjects, Pose pose) {
+            this.detectionTime = detectionTime;
+            this.trackedObjects = trackedObjects;
+            this.pose = pose;
+        }
+
+        public int getDetectionTime() {
+            return detectionTime;
+        }
+
+        public List<TrackedObject> getTrackedObjects() {
+            return trackedObjects;
+        }
+
+        public Pose getPose() {
+            return pose;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces the cloud points of a tracked object before it is sent to Fusion-SLAM.
+ * <ul>
+ *   <li>voxel grid: points falling in the same square cell are replaced by their centroid;</li>
+ *   <li>max points: runs of consecutive points are averaged down to at most {@code maxPoints},
+ *       and the result is shifted so the object's centroid is exactly preserved.</li>
+ * </ul>
+ * When both are set the voxel grid is applied first. Output keeps the scan order of the input,
+ * so index-wise averaging of landmarks keeps matching the same part of the object.
+ * Not thread safe: every LiDAR worker owns its own instance.
+ */
+public class PointDownsampler {
+    private final double voxelSize;
+    private final int maxPoints;
+
+    private long objects;
+    private long rawPoints;
+    private long keptPoints;
+    private double centroidShiftSum;
+    private double centroidShiftMax;
+    private long nanos;
+
+    /**
+     * @param voxelSize Cell edge length of the voxel grid, or 0 to disable it.
+     * @param maxPoints Maximum number of points per object, or 0 for no cap.
+     */
+    public PointDownsampler(double voxelSize, int maxPoints) {
+        if (voxelSize < 0 || maxPoints < 0) {
+            throw new IllegalArgumentException("Downsampling parameters must not be negative");
+        }
+        this.voxelSize = voxelSize;
+        this.maxPoints = maxPoints;
+    }
+
+    public boolean isEnabled() {
+        return voxelSize > 0 || maxPoints > 0;
+    }
+
+    public List<CloudPoint> apply(List<CloudPoint> points) {
+        if (!isEnabled() || points == null || points.isEmpty()) {
+            return points;
+        }
+        long start = System.nanoTime();
+        int n = points.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double rawX = 0;
+        double rawY = 0;
+        for (int i = 0; i < n; i++) {
+            if (points instanceof CloudPointSlice) {
+                xs[i] = ((CloudPointSlice) points).getX(i);
+                ys[i] = ((CloudPointSlice) points).getY(i);
+            } else {
+                xs[i] = points.get(i).getX();
+                ys[i] = points.get(i).getY();
+            }
+            rawX += xs[i];
+            rawY += ys[i];
+        }
+        rawX /= n;
+        rawY /= n;
+
+        int count = n;
+        if (voxelSize > 0) {
+            count = voxelGrid(xs, ys, count);
+        }
+        if (maxPoints > 0 && count > maxPoints) {
+            count = cap(xs, ys, count, rawX, rawY);
+        }
+
+        List<CloudPoint> result = new ArrayList<>(count);
+        double keptX = 0;
+        double keptY = 0;
+        for (int i = 0; i < count; i++) {
+            result.add(new CloudPoint(xs[i], ys[i]));
+            keptX += xs[i];
+            keptY += ys[i];
+        }
+        double shift = Math.hypot(keptX / count - rawX, keptY / count - rawY);
+
+        objects++;
+        rawPoints += n;
+        keptPoints += count;
+        centroidShiftSum += shift;
+        centroidShiftMax = Math.max(centroidShiftMax, shift);
+        nanos += System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Replaces the first {@code count} points by one centroid per occupied cell, in order of first occurrence.
+     *
+     * @return the number of cells.
+     */
+    private int voxelGrid(double[] xs, double[] ys, int count) {
+        Map<Long, double[]> cells = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            long cellX = (long) Math.floor(xs[i] / voxelSize);
+            long cellY = (long) Math.floor(ys[i] / voxelSize);
+            double[] sum = cells.computeIfAbsent((cellX << 32) ^ (cellY & 0xffffffffL), key -> new double[3]);
+            sum[0] += xs[i];
+            sum[1] += ys[i];
+            sum[2]++;
+        }
+        int cell = 0;
+        for (double[] sum : cells.values()) {
+            xs[cell] = sum[0] / sum[2];
+            ys[cell] = sum[1] / sum[2];
+            cell++;
+        }
+        return cell;
+    }
+
+    /**
+     * Averages consecutive runs of points down to {@link #maxPoints} and re-centres the result on the raw centroid.
+     */
+    private int cap(double[] xs, double[] ys, int count, double rawX, double rawY) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int bucket = 0; bucket < maxPoints; bucket++) {
+            int from = (int) ((long) bucket * count / maxPoints);
+            int to = (int) ((long) (bucket + 1) * count / maxPoints);
+            double x = 0;
+            double y = 0;
+            for (int i = from; i < to; i++) {
+                x += xs[i];
+                y += ys[i];
+            }
+            xs[bucket] = x / (to - from);
+            ys[bucket] = y / (to - from);
+            meanX += xs[bucket];
+            meanY += ys[bucket];
+        }
+        double dx = rawX - meanX / maxPoints;
+        double dy = rawY - meanY / maxPoints;
+        for (int bucket = 0; bucket < maxPoints; bucket++) {
+            xs[bucket] += dx;
+            ys[bucket] += dy;
+        }
+        return maxPoints;
+    }
+
+    public long getRawPoints() {
+        return rawPoints;
+    }
+
+    public long getKeptPoints() {
+        return keptPoints;
+    }
+
+    /**
+     * @return the points kept against the accuracy given up: fewer kept points mean proportionally less
+     *         transform and fusion work, the centroid shift shows how far the object moved because of it.
+     */
+    public String report() {
+        return String.format("voxel=%s maxPoints=%s objects=%d raw=%d kept=%d (%.1f%%) centroidShift mean=%.4f max=%.4f time=%.1f ms",
+                voxelSize > 0 ? String.valueOf(voxelSize) : "off",
+                maxPoints > 0 ? String.valueOf(maxPoints) : "off",
+                objects, rawPoints, keptPoints,
+                rawPoints == 0 ? 100.0 : 100.0 * keptPoints / rawPoints,
+                objects == 0 ? 0.0 : centroidShiftSum / objects,
+                centroidShiftMax,
+                nanos / 1e6);
+    }
+}
@@ -0,0 +1,104 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Single-writer, multi-reader ring of the latest poses, slotted by tick.
+ * The writer (PoseService) publishes without locking; readers (Fusion-SLAM) read without locking
+ * and without going through the message bus. Every slot is guarded by a version that is odd while
+ * the slot is being written: a reader retries when it sees an odd version or the version changed
+ * under it, so it never observes a half-written pose.
+ * <p>
+ * A slot holds the pose of tick {@code t} until tick {@code t + capacity} overwrites it.
+ */
+public class PoseRing {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int mask;
+    // per slot: version, then (x, y) and (yaw, time) packed into two longs
+    private final AtomicLongArray versions;
+    private final AtomicLongArray data;
+    private volatile int latestTime = -1;
+
+    private static class SingletonHolder {
+        private static final PoseRing instance = new PoseRing(DEFAULT_CAPACITY);
+    }
+
+    public static PoseRing getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    /**
+     * @param capacity Number of ticks kept, rounded up to a power of two.
+     */
+    public PoseRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.versions = new AtomicLongArray(size);
+        this.data = new AtomicLongArray(2 * size);
+        for (int slot = 0; slot < size; slot++) {
+            data.set(2 * slot + 1, pack(0, -1)); // no tick yet
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Publishes a pose. Must only be called from the single writer thread.
+     */
+    public void publish(Pose pose) {
+        int slot = pose.getTime() & mask;
+        long version = versions.get(slot);
+        versions.set(slot, version + 1);
+        data.set(2 * slot, pack(Float.floatToRawIntBits(pose.getX()), Float.floatToRawIntBits(pose.getY())));
+        data.set(2 * slot + 1, pack(Float.floatToRawIntBits(pose.getYaw()), pose.getTime()));
+        versions.set(slot, version + 2);
+        if (pose.getTime() > latestTime) {
+            latestTime = pose.getTime();
+        }
+    }
+
+    /**
+     * @return the pose published for {@code time}, or null if there is none or it was already overwritten.
+     */
+    public Pose get(int time) {
+        if (time < 0) {
+            return null;
+        }
+        int slot = time & mask;
+        while (true) {
+            long version = versions.get(slot);
+            long position = data.get(2 * slot);
+            long orientation = data.get(2 * slot + 1);
+            if ((version & 1) == 0 && versions.get(slot) == version) {
+                if (low(orientation) != time) {
+                    return null;
+                }
+                return new Pose(Float.intBitsToFloat(high(position)), Float.intBitsToFloat(low(position)),
+                        Float.intBitsToFloat(high(orientation)), time);
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the latest tick that has been published, or -1.
+     */
+    public int getLatestTime() {
+        return latestTime;
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    private static int high(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int low(long value) {
+        return (int) value;
+    }
+}
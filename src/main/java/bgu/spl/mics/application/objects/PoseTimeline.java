@@ -0,0 +1,187 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Poses indexed by tick, stored in primitive arrays.
+ * An exact lookup is one array access; a tick without a pose is interpolated from the nearest poses
+ * around it (at most {@link #INTERPOLATION_WINDOW} ticks away), turning the yaw the short way round.
+ * Ticks before {@link #trimBefore(int)} are dropped, and with a retention window poses older than
+ * {@code newest - retention} are dropped as new ones arrive, so memory and lookup cost stay flat
+ * however long the run is.
+ */
+public class PoseTimeline {
+    public static final int INTERPOLATION_WINDOW = 32;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int retentionTicks;
+    private int base;
+    private float[] xs;
+    private float[] ys;
+    private float[] yaws;
+    private boolean[] present;
+    private int trimmedBefore;
+    private int lastTime = -1;
+    private int size;
+
+    /**
+     * @param retentionTicks How many ticks behind the newest pose are kept, or 0 to keep every pose.
+     */
+    public PoseTimeline(int retentionTicks) {
+        this.retentionTicks = retentionTicks;
+        allocate(0, INITIAL_CAPACITY);
+    }
+
+    public PoseTimeline() {
+        this(0);
+    }
+
+    private void allocate(int base, int capacity) {
+        this.base = base;
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.yaws = new float[capacity];
+        this.present = new boolean[capacity];
+    }
+
+    public synchronized void put(Pose pose) {
+        int time = pose.getTime();
+        if (time < trimmedBefore) {
+            return;
+        }
+        if (time - base >= present.length) {
+            grow(time);
+        }
+        int slot = time - base;
+        xs[slot] = pose.getX();
+        ys[slot] = pose.getY();
+        yaws[slot] = pose.getYaw();
+        if (!present[slot]) {
+            present[slot] = true;
+            size++;
+        }
+        if (time > lastTime) {
+            lastTime = time;
+            if (retentionTicks > 0) {
+                trimBefore(time - retentionTicks);
+            }
+        }
+    }
+
+    public void putAll(List<Pose> poses) {
+        for (Pose pose : poses) {
+            put(pose);
+        }
+    }
+
+    /**
+     * Moves the storage so it starts at the trim point, dropping trimmed slots instead of copying them.
+     */
+    private void grow(int time) {
+        int newBase = Math.max(base, trimmedBefore);
+        int live = Math.max(INITIAL_CAPACITY, base + present.length - newBase);
+        int capacity = Math.max(time - newBase + 1, live * 2);
+        int from = newBase - base;
+        int length = Math.max(0, present.length - from);
+        float[] oldXs = xs;
+        float[] oldYs = ys;
+        float[] oldYaws = yaws;
+        boolean[] oldPresent = present;
+        allocate(newBase, capacity);
+        if (length > 0) {
+            System.arraycopy(oldXs, from, xs, 0, length);
+            System.arraycopy(oldYs, from, ys, 0, length);
+            System.arraycopy(oldYaws, from, yaws, 0, length);
+            System.arraycopy(oldPresent, from, present, 0, length);
+        }
+    }
+
+    /**
+     * Drops every pose before {@code time}.
+     */
+    public synchronized void trimBefore(int time) {
+        int end = Math.min(time, base + present.length);
+        for (int t = Math.max(trimmedBefore, base); t < end; t++) {
+            if (present[t - base]) {
+                present[t - base] = false;
+                size--;
+            }
+        }
+        trimmedBefore = Math.max(trimmedBefore, time);
+    }
+
+    /**
+     * @return the pose recorded at exactly {@code time}, or null.
+     */
+    public synchronized Pose get(int time) {
+        return has(time) ? poseAt(time) : null;
+    }
+
+    /**
+     * @return the pose at {@code time}, interpolated between the closest poses before and after it
+     *         if there is no exact one, or null if there is no pose on both sides within the window.
+     */
+    public synchronized Pose getOrInterpolate(int time) {
+        if (has(time)) {
+            return poseAt(time);
+        }
+        int before = time - 1;
+        while (before >= time - INTERPOLATION_WINDOW && !has(before)) {
+            before--;
+        }
+        int after = time + 1;
+        while (after <= time + INTERPOLATION_WINDOW && !has(after)) {
+            after++;
+        }
+        if (!has(before) || !has(after)) {
+            return null;
+        }
+        int from = before - base;
+        int to = after - base;
+        float t = (float) (time - before) / (after - before);
+        float yawDelta = ((yaws[to] - yaws[from]) % 360 + 540) % 360 - 180;
+        return new Pose(xs[from] + (xs[to] - xs[from]) * t,
+                ys[from] + (ys[to] - ys[from]) * t,
+                yaws[from] + yawDelta * t,
+                time);
+    }
+
+    private boolean has(int time) {
+        int slot = time - base;
+        return time >= trimmedBefore && slot >= 0 && slot < present.length && present[slot];
+    }
+
+    private Pose poseAt(int time) {
+        int slot = time - base;
+        return new Pose(xs[slot], ys[slot], yaws[slot], time);
+    }
+
+    /**
+     * @return the latest tick that has a pose, or -1 if there is none.
+     */
+    public synchronized int getLastTime() {
+        return lastTime;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the retained poses in tick order.
+     */
+    public synchronized List<Pose> toList() {
+        List<Pose> poses = new ArrayList<>(size);
+        for (int slot = Math.max(0, trimmedBefore - base); slot < present.length; slot++) {
+            if (present[slot]) {
+                poses.add(poseAt(base + slot));
+            }
+        }
+        return poses;
+    }
+}
@@ -0,0 +1,200 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A map saved by an earlier run, which Fusion-SLAM starts from instead of an empty map.
+ * <p>
+ * A {@link LandmarkMapFormat} file is memory-mapped and a landmark is decoded only when it is first
+ * needed, with the observation count (and variance) of every point, so fusing into it continues the
+ * same running mean. An {@code output_file.json} (or {@code OutputError.json}) has to be read in one
+ * pass; its points count as one observation each unless the file lists {@code observations}.
+ */
+public class PriorLandmarkMap {
+    private final Path path;
+    private final LandmarkMapReader reader;
+    private final List<LandMark> parsed;
+    private final Map<String, Integer> parsedIndex;
+
+    private PriorLandmarkMap(Path path, LandmarkMapReader reader, List<LandMark> parsed) {
+        this.path = path;
+        this.reader = reader;
+        this.parsed = parsed;
+        this.parsedIndex = new HashMap<>();
+        if (parsed != null) {
+            for (int i = 0; i < parsed.size(); i++) {
+                parsedIndex.put(parsed.get(i).getId(), i);
+            }
+        }
+    }
+
+    /**
+     * Opens a binary map or a JSON output file, told apart by the binary map's magic number.
+     */
+    public static PriorLandmarkMap open(Path path) throws IOException {
+        int magic = 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (Files.size(path) >= Integer.BYTES) {
+                magic = in.readInt();
+            }
+        }
+        if (magic == LandmarkMapFormat.MAGIC) {
+            return new PriorLandmarkMap(path, LandmarkMapReader.open(path), null);
+        }
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            return new PriorLandmarkMap(path, null, readOutputFile(in));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isMemoryMapped() {
+        return reader != null;
+    }
+
+    public int size() {
+        return reader != null ? reader.getLandmarkCount() : parsed.size();
+    }
+
+    public String getId(int landmark) {
+        return reader != null ? reader.getId(landmark) : parsed.get(landmark).getId();
+    }
+
+    /**
+     * @return the position of the landmark with {@code id}, or -1.
+     */
+    public int indexOf(String id) {
+        if (reader != null) {
+            return reader.indexOf(id);
+        }
+        Integer position = parsedIndex.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * @return a new landmark with the saved points of the landmark at {@code landmark}.
+     */
+    public LandMark load(int landmark) {
+        return reader != null ? reader.getLandmark(landmark) : parsed.get(landmark).copy();
+    }
+
+    /**
+     * Reads the {@code landMarks} object of an output file, at the top level or inside {@code statistics}.
+     */
+    private static List<LandMark> readOutputFile(JsonReader in) throws IOException {
+        List<LandMark> landmarks = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("landMarks".equals(name)) {
+                readLandmarks(in, landmarks);
+            } else if ("statistics".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if ("landMarks".equals(in.nextName())) {
+                        readLandmarks(in, landmarks);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return landmarks;
+    }
+
+    private static void readLandmarks(JsonReader in, List<LandMark> landmarks) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            landmarks.add(readLandmark(in, key));
+        }
+        in.endObject();
+    }
+
+    private static LandMark readLandmark(JsonReader in, String key) throws IOException {
+        String id = key;
+        String description = null;
+        List<double[]> points = new ArrayList<>();
+        List<Integer> observations = null;
+        List<Double> variances = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("id".equals(name)) {
+                id = in.nextString();
+            } else if ("description".equalsIgnoreCase(name)) {
+                description = in.nextString();
+            } else if ("coordinates".equalsIgnoreCase(name)) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    double[] point = new double[2];
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String axis = in.nextName();
+                        if ("x".equals(axis)) {
+                            point[0] = in.nextDouble();
+                        } else if ("y".equals(axis)) {
+                            point[1] = in.nextDouble();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    points.add(point);
+                }
+                in.endArray();
+            } else if ("observations".equals(name)) {
+                observations = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    observations.add(in.nextInt());
+                }
+                in.endArray();
+            } else if ("variances".equals(name)) {
+                variances = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    variances.add(in.nextDouble());
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        int count = points.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int[] weights = new int[count];
+        boolean weighted = observations != null && observations.size() == count;
+        boolean spread = weighted && variances != null && variances.size() == count;
+        double[] spreads = spread ? new double[count] : null;
+        for (int i = 0; i < count; i++) {
+            xs[i] = points.get(i)[0];
+            ys[i] = points.get(i)[1];
+            weights[i] = weighted ? Math.max(1, observations.get(i)) : 1;
+            if (spread) {
+                spreads[i] = variances.get(i);
+            }
+        }
+        return new LandMark(id, description, xs, ys, weights, spreads, count);
+    }
+}
@@ -0,0 +1,143 @@
+package bgu.spl.mics.application.objects;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compact encoding of an object's cloud points.
+ * The first point is kept exactly; every point is stored as a fixed-point offset from it, in units of
+ * {@code quantum}, as int16 when all offsets fit and as int32 otherwise. Each decoded coordinate is
+ * within {@code quantum / 2} of the original. Points are decoded on access.
+ * <pre>
+ * wire form   quantum(double), originX(double), originY(double), count(int), width(byte), offsets
+ * </pre>
+ */
+public class QuantizedCloudPoints extends CloudPointSlice {
+    public static final int HEADER_BYTES = 3 * Double.BYTES + Integer.BYTES + 1;
+
+    private final double quantum;
+    private final double originX;
+    private final double originY;
+    private final int count;
+    private final int width;
+    private final ByteBuffer offsets;
+
+    private QuantizedCloudPoints(double quantum, double originX, double originY, int count, int width, ByteBuffer offsets) {
+        this.quantum = quantum;
+        this.originX = originX;
+        this.originY = originY;
+        this.count = count;
+        this.width = width;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Encodes {@code points} with the given precision.
+     *
+     * @return the encoded points, or {@code points} itself if they are empty, {@code quantum} is not positive,
+     *         or the object spans too many quanta for int32 offsets.
+     */
+    public static List<CloudPoint> encode(List<CloudPoint> points, double quantum) {
+        if (quantum <= 0 || points == null || points.isEmpty()) {
+            return points;
+        }
+        int count = points.size();
+        double originX = x(points, 0);
+        double originY = y(points, 0);
+        long[] steps = new long[2 * count];
+        long maxStep = 0;
+        for (int i = 0; i < count; i++) {
+            steps[2 * i] = Math.round((x(points, i) - originX) / quantum);
+            steps[2 * i + 1] = Math.round((y(points, i) - originY) / quantum);
+            maxStep = Math.max(maxStep, Math.max(Math.abs(steps[2 * i]), Math.abs(steps[2 * i + 1])));
+        }
+        if (maxStep > Integer.MAX_VALUE) {
+            return points;
+        }
+
+        int width = maxStep <= Short.MAX_VALUE ? Short.BYTES : Integer.BYTES;
+        ByteBuffer offsets = ByteBuffer.allocate(2 * count * width);
+        for (long step : steps) {
+            if (width == Short.BYTES) {
+                offsets.putShort((short) step);
+            } else {
+                offsets.putInt((int) step);
+            }
+        }
+        offsets.flip();
+        return new QuantizedCloudPoints(quantum, originX, originY, count, width, offsets);
+    }
+
+    private static double x(List<CloudPoint> points, int i) {
+        return points instanceof CloudPointSlice ? ((CloudPointSlice) points).getX(i) : points.get(i).getX();
+    }
+
+    private static double y(List<CloudPoint> points, int i) {
+        return points instanceof CloudPointSlice ? ((CloudPointSlice) points).getY(i) : points.get(i).getY();
+    }
+
+    @Override
+    public double getX(int index) {
+        return originX + step(2 * index) * quantum;
+    }
+
+    @Override
+    public double getY(int index) {
+        return originY + step(2 * index + 1) * quantum;
+    }
+
+    private int step(int slot) {
+        return width == Short.BYTES ? offsets.getShort(slot * Short.BYTES) : offsets.getInt(slot * Integer.BYTES);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int bytesPerPoint() {
+        return 2 * width;
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * @return the size of the wire form written by {@link #writeTo(ByteBuffer)}.
+     */
+    public int encodedBytes() {
+        return HEADER_BYTES + offsets.capacity();
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putDouble(quantum);
+        out.putDouble(originX);
+        out.putDouble(originY);
+        out.putInt(count);
+        out.put((byte) width);
+        out.put(offsets.duplicate());
+    }
+
+    /**
+     * Reads points written by {@link #writeTo(ByteBuffer)}; the offsets are copied out of {@code in}.
+     */
+    public static QuantizedCloudPoints readFrom(ByteBuffer in) {
+        double quantum = in.getDouble();
+        double originX = in.getDouble();
+        double originY = in.getDouble();
+        int count = in.getInt();
+        int width = in.get();
+        if (width != Short.BYTES && width != Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid quantized point width: " + width);
+        }
+        ByteBuffer offsets = ByteBuffer.allocate(2 * count * width);
+        ByteBuffer source = in.slice();
+        source.limit(offsets.capacity());
+        offsets.put(source);
+        offsets.flip();
+        in.position(in.position() + offsets.capacity());
+        return new QuantizedCloudPoints(quantum, originX, originY, count, width, offsets);
+    }
+}
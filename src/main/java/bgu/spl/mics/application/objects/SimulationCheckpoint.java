@@ -0,0 +1,303 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The state of a run between two ticks: everything needed to continue it from {@link #getTick()}
+ * after reloading the input files. Filled in by the {@link CheckpointManager} participants.
+ * <pre>
+ * file     magic, version, payloadBytes, payload, crc32(payload)
+ * payload  tick, statistics, landmarks, poses, pending tracked objects, camera event logs, LiDAR waiting objects
+ * </pre>
+ * Files are written to a temporary file, forced to disk and renamed over the previous checkpoint,
+ * so a crash leaves either the old or the new checkpoint, never a mix.
+ */
+public class SimulationCheckpoint {
+    public static final int MAGIC = 0x53434B50; // "SCKP"
+    public static final int VERSION = 1;
+
+    private final int tick;
+    private int systemRuntime;
+    private int numDetectedObjects;
+    private int numTrackedObjects;
+    private int numLandmarks;
+    private List<LandMark> landmarks;
+    private List<Pose> poses;
+    private Map<Integer, List<TrackedObject>> pendingTrackedObjects;
+    private final Map<String, Map<Integer, StampedDetectedObjects>> cameraEvents;
+    private final Map<String, List<TrackedObject>> lidarWaiting;
+
+    /**
+     * @param tick the first tick the resumed run sends; the checkpoint holds the state after {@code tick - 1}.
+     */
+    public SimulationCheckpoint(int tick) {
+        this.tick = tick;
+        this.landmarks = new ArrayList<>();
+        this.poses = new ArrayList<>();
+        this.pendingTrackedObjects = new TreeMap<>();
+        this.cameraEvents = new LinkedHashMap<>();
+        this.lidarWaiting = new LinkedHashMap<>();
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public void setStatistics(int systemRuntime, int numDetectedObjects, int numTrackedObjects, int numLandmarks) {
+        this.systemRuntime = systemRuntime;
+        this.numDetectedObjects = numDetectedObjects;
+        this.numTrackedObjects = numTrackedObjects;
+        this.numLandmarks = numLandmarks;
+    }
+
+    public int getSystemRuntime() {
+        return systemRuntime;
+    }
+
+    public int getNumDetectedObjects() {
+        return numDetectedObjects;
+    }
+
+    public int getNumTrackedObjects() {
+        return numTrackedObjects;
+    }
+
+    public int getNumLandmarks() {
+        return numLandmarks;
+    }
+
+    /**
+     * @param landmarks copies that no one modifies any more.
+     */
+    public void setFusionState(List<LandMark> landmarks, List<Pose> poses, Map<Integer, List<TrackedObject>> pendingTrackedObjects) {
+        this.landmarks = landmarks;
+        this.poses = poses;
+        this.pendingTrackedObjects = pendingTrackedObjects;
+    }
+
+    public List<LandMark> getLandmarks() {
+        return landmarks;
+    }
+
+    public List<Pose> getPoses() {
+        return poses;
+    }
+
+    public Map<Integer, List<TrackedObject>> getPendingTrackedObjects() {
+        return pendingTrackedObjects;
+    }
+
+    /**
+     * @param events detections the camera has read but not sent yet, by the tick they are due.
+     */
+    public synchronized void putCameraEvents(String cameraId, Map<Integer, StampedDetectedObjects> events) {
+        cameraEvents.put(cameraId, new TreeMap<>(events));
+    }
+
+    public synchronized Map<Integer, StampedDetectedObjects> getCameraEvents(String cameraId) {
+        Map<Integer, StampedDetectedObjects> events = cameraEvents.get(cameraId);
+        return events == null ? new TreeMap<>() : events;
+    }
+
+    /**
+     * @param waiting tracked objects the worker holds until its frequency has passed.
+     */
+    public synchronized void putLidarWaiting(String workerId, List<TrackedObject> waiting) {
+        lidarWaiting.put(workerId, new ArrayList<>(waiting));
+    }
+
+    public synchronized List<TrackedObject> getLidarWaiting(String workerId) {
+        List<TrackedObject> waiting = lidarWaiting.get(workerId);
+        return waiting == null ? new ArrayList<>() : waiting;
+    }
+
+    /**
+     * Atomically replaces the checkpoint at {@code path}.
+     */
+    public synchronized void write(Path path) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        writePayload(payload);
+        payload.flush();
+        byte[] bytes = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(MAGIC).putInt(VERSION).putInt(bytes.length).flip();
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            trailer.putInt((int) crc.getValue()).flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(bytes), trailer};
+            while (trailer.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SimulationCheckpoint read(Path path) throws IOException {
+        byte[] payload;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+            }
+            payload = new byte[in.readInt()];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != in.readInt()) {
+                throw new IOException("Corrupt checkpoint: " + path);
+            }
+        }
+        return readPayload(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    private void writePayload(DataOutputStream out) throws IOException {
+        out.writeInt(tick);
+        out.writeInt(systemRuntime);
+        out.writeInt(numDetectedObjects);
+        out.writeInt(numTrackedObjects);
+        out.writeInt(numLandmarks);
+
+        out.writeInt(landmarks.size());
+        for (LandMark landmark : landmarks) {
+            MapDeltaLog.writeLandmark(out, landmark);
+        }
+        out.writeInt(poses.size());
+        for (Pose pose : poses) {
+            out.writeInt(pose.getTime());
+            out.writeFloat(pose.getX());
+            out.writeFloat(pose.getY());
+            out.writeFloat(pose.getYaw());
+        }
+        out.writeInt(pendingTrackedObjects.size());
+        for (Map.Entry<Integer, List<TrackedObject>> entry : pendingTrackedObjects.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeTrackedObjects(out, entry.getValue());
+        }
+
+        out.writeInt(cameraEvents.size());
+        for (Map.Entry<String, Map<Integer, StampedDetectedObjects>> camera : cameraEvents.entrySet()) {
+            out.writeUTF(camera.getKey());
+            out.writeInt(camera.getValue().size());
+            for (Map.Entry<Integer, StampedDetectedObjects> event : camera.getValue().entrySet()) {
+                out.writeInt(event.getKey());
+                out.writeInt(event.getValue().getTime());
+                List<DetectedObject> objects = event.getValue().getDetectedObjects();
+                out.writeInt(objects.size());
+                for (DetectedObject object : objects) {
+                    out.writeUTF(object.getId());
+                    out.writeUTF(object.getDescription() == null ? "" : object.getDescription());
+                }
+            }
+        }
+        out.writeInt(lidarWaiting.size());
+        for (Map.Entry<String, List<TrackedObject>> worker : lidarWaiting.entrySet()) {
+            out.writeUTF(worker.getKey());
+            writeTrackedObjects(out, worker.getValue());
+        }
+    }
+
+    private static SimulationCheckpoint readPayload(DataInputStream in) throws IOException {
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(in.readInt());
+        checkpoint.setStatistics(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+
+        int landmarkCount = in.readInt();
+        List<LandMark> landmarks = new ArrayList<>(landmarkCount);
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarks.add(MapDeltaLog.readLandmark(in));
+        }
+        int poseCount = in.readInt();
+        List<Pose> poses = new ArrayList<>(poseCount);
+        for (int i = 0; i < poseCount; i++) {
+            int time = in.readInt();
+            poses.add(new Pose(in.readFloat(), in.readFloat(), in.readFloat(), time));
+        }
+        int pendingCount = in.readInt();
+        Map<Integer, List<TrackedObject>> pending = new TreeMap<>();
+        for (int i = 0; i < pendingCount; i++) {
+            pending.put(in.readInt(), readTrackedObjects(in));
+        }
+        checkpoint.setFusionState(landmarks, poses, pending);
+
+        int cameraCount = in.readInt();
+        for (int c = 0; c < cameraCount; c++) {
+            String cameraId = in.readUTF();
+            int eventCount = in.readInt();
+            Map<Integer, StampedDetectedObjects> events = new TreeMap<>();
+            for (int e = 0; e < eventCount; e++) {
+                int due = in.readInt();
+                int time = in.readInt();
+                int objectCount = in.readInt();
+                List<DetectedObject> objects = new ArrayList<>(objectCount);
+                for (int o = 0; o < objectCount; o++) {
+                    objects.add(new DetectedObject(in.readUTF(), in.readUTF()));
+                }
+                events.put(due, new StampedDetectedObjects(time, objects));
+            }
+            checkpoint.putCameraEvents(cameraId, events);
+        }
+        int workerCount = in.readInt();
+        for (int w = 0; w < workerCount; w++) {
+            String workerId = in.readUTF();
+            checkpoint.putLidarWaiting(workerId, readTrackedObjects(in));
+        }
+        return checkpoint;
+    }
+
+    private static void writeTrackedObjects(DataOutputStream out, List<TrackedObject> objects) throws IOException {
+        out.writeInt(objects.size());
+        for (TrackedObject object : objects) {
+            out.writeUTF(object.getId());
+            out.writeInt(object.getTime());
+            out.writeUTF(object.getDescription() == null ? "" : object.getDescription());
+            List<CloudPoint> points = object.getCoordinates();
+            out.writeInt(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                out.writeDouble(points.get(i).getX());
+                out.writeDouble(points.get(i).getY());
+            }
+        }
+    }
+
+    private static List<TrackedObject> readTrackedObjects(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<TrackedObject> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            int time = in.readInt();
+            String description = in.readUTF();
+            int pointCount = in.readInt();
+            List<CloudPoint> points = new ArrayList<>(pointCount);
+            for (int p = 0; p < pointCount; p++) {
+                points.add(new CloudPoint(in.readDouble(), in.readDouble()));
+            }
+            objects.add(new TrackedObject(id, time, description, points));
+        }
+        return objects;
+    }
+}
@@ -11,27 +11,44 @@ public class StampedCloudPoints {
     private String id;
     private int time;
     private List<CloudPoint> cloudPoints;
+    private transient int symbol;
 
     /**
      * Constructor for StampedCloudPoints.
      *
      * @param id    The ID of the cloud point group.
      * @param time  The timestamp associated with this group of cloud points.
+     * @param cloudpoints The points, usually a {@link CloudPointSlice} view into the {@link CloudPointStore}.
      */
     public StampedCloudPoints(String id, int time, List<CloudPoint> cloudpoints) {
         this.id = id;
         this.time = time;
         this.cloudPoints = cloudpoints;
+        this.symbol = ObjectIds.intern(id);
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * @return the interned {@link ObjectIds} symbol of the id.
+     */
+    public int getSymbol() {
+        if (symbol == ObjectIds.NONE) {
+            symbol = ObjectIds.intern(id);
+        }
+        return symbol;
+    }
+
     public int getTime() {
         return time;
     }
 
+    /**
+     * @return the points of this group. For loaded LiDAR data this is a lightweight view over
+     *         primitive storage, so prefer {@link CloudPointSlice#getX(int)} when iterating large clouds.
+     */
     public List<CloudPoint> getCloudPoints() {
         return cloudPoints;
     }
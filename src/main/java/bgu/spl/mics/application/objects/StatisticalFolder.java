@@ -67,6 +67,16 @@ public class StatisticalFolder {
      */
     public void incrementNumLandmarks(int size)  {numLandmarks.addAndGet(size);}
 
+    /**
+     * Sets every counter, when a run is resumed from a checkpoint.
+     */
+    public void restore(int systemRuntime, int numDetectedObjects, int numTrackedObjects, int numLandmarks) {
+        this.systemRuntime.set(systemRuntime);
+        this.numDetectedObjects.set(numDetectedObjects);
+        this.numTrackedObjects.set(numTrackedObjects);
+        this.numLandmarks.set(numLandmarks);
+    }
+
     public int getSystemRuntime() {
         return systemRuntime.get();
     }
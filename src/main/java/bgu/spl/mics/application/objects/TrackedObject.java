@@ -13,9 +13,11 @@ public class TrackedObject {
     private final int time;
     private final String description;
     private final  List<CloudPoint> coordinates;
+    private transient int symbol;
 
     public TrackedObject(DetectedObject detectedObject, int time,  List<CloudPoint> coordinates) {
         this.id = detectedObject.getId();
+        this.symbol = detectedObject.getSymbol();
         this.time = time;
         this.description = detectedObject.getDescription();
         if (coordinates != null) {
@@ -27,6 +29,7 @@ public class TrackedObject {
 
     public TrackedObject(String id, int time, String description, List<CloudPoint> coordinates) {
         this.id = id;
+        this.symbol = ObjectIds.intern(id);
         this.time = time;
         this.description = description;
         if (coordinates != null) {
@@ -40,6 +43,16 @@ public class TrackedObject {
         return id;
     }
 
+    /**
+     * @return the interned {@link ObjectIds} symbol of the id.
+     */
+    public int getSymbol() {
+        if (symbol == ObjectIds.NONE) {
+            symbol = ObjectIds.intern(id);
+        }
+        return symbol;
+    }
+
     public int getTime() {
         return time;
     }
@@ -0,0 +1,92 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * Transforms points from the robot frame into the global frame for one pose at a time.
+ * The rotation is computed once per pose; points are copied into primitive arrays and transformed
+ * by a branch-free loop that the JIT can unroll and vectorize. Input and output buffers are reused
+ * between calls, so an instance is not thread safe: use one per fusing thread.
+ */
+public class TransformKernel {
+    private double cos;
+    private double sin;
+    private double translateX;
+    private double translateY;
+    private double[] inX = new double[256];
+    private double[] inY = new double[256];
+    private double[] outX = new double[256];
+    private double[] outY = new double[256];
+    private int count;
+
+    /**
+     * Computes the rotation and translation of {@code pose}; its yaw is in degrees.
+     */
+    public TransformKernel setPose(Pose pose) {
+        double radYaw = Math.toRadians(pose.getYaw());
+        this.cos = Math.cos(radYaw);
+        this.sin = Math.sin(radYaw);
+        this.translateX = pose.getX();
+        this.translateY = pose.getY();
+        return this;
+    }
+
+    /**
+     * Transforms {@code points} with the current pose into the output buffers.
+     *
+     * @return the number of transformed points, readable through {@link #getX()} and {@link #getY()}.
+     */
+    public int transform(List<CloudPoint> points) {
+        count = points.size();
+        if (inX.length < count) {
+            int capacity = Math.max(count, inX.length * 2);
+            inX = new double[capacity];
+            inY = new double[capacity];
+            outX = new double[capacity];
+            outY = new double[capacity];
+        }
+        if (points instanceof CloudPointSlice) {
+            CloudPointSlice slice = (CloudPointSlice) points;
+            for (int i = 0; i < count; i++) {
+                inX[i] = slice.getX(i);
+                inY[i] = slice.getY(i);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                CloudPoint point = points.get(i);
+                inX[i] = point.getX();
+                inY[i] = point.getY();
+            }
+        }
+        transform(inX, inY, count, cos, sin, translateX, translateY, outX, outY);
+        return count;
+    }
+
+    /**
+     * Rotates by (cos, sin) and then translates {@code count} points.
+     */
+    public static void transform(double[] xs, double[] ys, int count, double cos, double sin,
+                                 double translateX, double translateY, double[] outX, double[] outY) {
+        for (int i = 0; i < count; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            outX[i] = cos * x - sin * y + translateX;
+            outY[i] = sin * x + cos * y + translateY;
+        }
+    }
+
+    /**
+     * @return the x coordinates of the last transform; valid up to its count and until the next call.
+     */
+    public double[] getX() {
+        return outX;
+    }
+
+    public double[] getY() {
+        return outY;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
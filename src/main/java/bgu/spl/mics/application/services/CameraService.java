@@ -17,12 +17,26 @@ import java.util.List;
  * This service interacts with the Camera object to detect objects and updates
  * the system's StatisticalFolder upon sending its observations.
  */
-public class CameraService extends MicroService {
+public class CameraService extends MicroService implements CheckpointManager.Participant {
     private final Camera camera;
 
     public CameraService(Camera camera) {
         super("camera " + camera.getId());
         this.camera = camera;
+        CheckpointManager.getInstance().register(this);
+    }
+
+    /**
+     * Saves the detections already read but not yet sent; the read position itself is the tick.
+     */
+    @Override
+    public void saveCheckpoint(SimulationCheckpoint checkpoint) {
+        checkpoint.putCameraEvents(camera.getId(), camera.getEventLog());
+    }
+
+    @Override
+    public void restoreCheckpoint(SimulationCheckpoint checkpoint) {
+        camera.getEventLog().putAll(checkpoint.getCameraEvents(camera.getId()));
     }
 
     @Override
@@ -34,6 +48,7 @@ public class CameraService extends MicroService {
         subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
             System.out.println(getName() + ": Received TerminatedBroadcast from " + terminated.getMessage());
             if(terminated.getMessage() == "TimeService") {
+                CheckpointManager.getInstance().unregister(this);
                 terminate();
             }
         });
@@ -41,6 +56,7 @@ public class CameraService extends MicroService {
         subscribeBroadcast(CrashedBroadcast.class, crashed -> {
             System.out.println(getName() + ": CrashedBroadcast detected from " + crashed.getMessage());
             camera.setStatus(STATUS.ERROR);
+            CheckpointManager.getInstance().unregister(this);
             terminate();
         });
     }
@@ -58,6 +74,7 @@ public class CameraService extends MicroService {
             System.out.println(getName() + ": Error detected in camera. Error details: " + error);
             sendBroadcast(new CrashedBroadcast(getName(), error));
             camera.setStatus(STATUS.ERROR);
+            CheckpointManager.getInstance().unregister(this);
             terminate();
             return;
         }
@@ -69,6 +86,7 @@ public class CameraService extends MicroService {
     private void handleTermination() {
         camera.setStatus(STATUS.DOWN);
         sendBroadcast(new TerminatedBroadcast(getName()));
+        CheckpointManager.getInstance().unregister(this);
         terminate();
     }
 
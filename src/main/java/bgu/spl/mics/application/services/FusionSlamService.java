@@ -1,15 +1,24 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Future;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.objects.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class FusionSlamService extends MicroService {
+    // how long, in all, the output waits for the shards to finish what was routed to them
+    private static final long SHARD_WAIT_MILLIS = 2_000;
     private final FusionSlam fusionSlam;
     private final String outputFilePath = "output_file.json";
+    private int currentTick;
+    private final List<FusionSlamShardService> shards;
+    private final List<Future<Void>> outstandingShardWork;
 
     /**
      * Constructor for FusionSlamService.
@@ -17,8 +26,18 @@ public class FusionSlamService extends MicroService {
      * @param fusionSlam The FusionSLAM object responsible for managing the global map.
      */
     public FusionSlamService(FusionSlam fusionSlam) {
+        this(fusionSlam, Collections.emptyList());
+    }
+
+    /**
+     * @param fusionSlam The FusionSLAM object responsible for managing the global map.
+     * @param shards     Shard services that tracked objects are routed to by id; empty to fuse on this service.
+     */
+    public FusionSlamService(FusionSlam fusionSlam, List<FusionSlamShardService> shards) {
         super("FusionSlam");
         this.fusionSlam = fusionSlam;
+        this.shards = shards;
+        this.outstandingShardWork = new ArrayList<>();
     }
 
     @Override
@@ -29,8 +48,6 @@ public class FusionSlamService extends MicroService {
 
         subscribeEvent(TrackedObjectsEvent.class, this::handleTrackedObjectsEvent);
 
-        subscribeEvent(PoseEvent.class, this::handlePoseEvent);
-
         subscribeBroadcast(CrashedBroadcast.class, this::handleCrashedBroadcast);
 
         subscribeBroadcast(TerminatedBroadcast.class, this::handleTerminatedBroadcast);
@@ -38,6 +55,15 @@ public class FusionSlamService extends MicroService {
 
     private void handleTickBroadcast(TickBroadcast tickBroadcast) {
         int currentTime = tickBroadcast.getTime();
+        currentTick = currentTime;
+        fusionSlam.drainPoseRing();
+        releasePendingTrackedObjects();
+        fusionSlam.recordMapDelta(currentTime);
+        fusionSlam.recordHistory(currentTime);
+        outstandingShardWork.removeIf(Future::isDone);
+        if (fusionSlam.isTerminationDue(currentTime)) {
+            awaitShards();
+        }
         if (fusionSlam.shouldTerminateAtTime(currentTime)) {
             System.out.println("FusionSlamService: Terminating Fusion Slam...");
             sendBroadcast(new TerminatedBroadcast("FusionSlamService"));
@@ -49,19 +75,78 @@ public class FusionSlamService extends MicroService {
         int detectionTime = event.getTime();
         List<TrackedObject> trackedObjects = event.getTrackedObjects();
         System.out.println("FusionSlamService: Processing " + trackedObjects.size() + " tracked objects at time " + detectionTime);
-        fusionSlam.processTrackedObjects(trackedObjects, detectionTime);
+        if (shards.isEmpty()) {
+            fusionSlam.processTrackedObjects(trackedObjects, detectionTime);
+        } else {
+            routeToShards(trackedObjects, detectionTime);
+        }
+        releasePendingTrackedObjects();
+        complete(event, null);
+    }
+
+    /**
+     * Splits the objects by owning shard and sends every shard its part.
+     */
+    private void routeToShards(List<TrackedObject> trackedObjects, int detectionTime) {
+        List<List<TrackedObject>> parts = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (TrackedObject object : trackedObjects) {
+            parts.get(FusionSlamShardService.shardOf(object.getSymbol(), shards.size())).add(object);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (parts.get(i).isEmpty()) {
+                continue;
+            }
+            Future<Void> future = sendEvent(new FusionShardEvent(detectionTime, parts.get(i)), shards.get(i));
+            if (future == null) {
+                // the shard is not registered (yet, or any more): fuse here rather than lose the update
+                fusionSlam.processTrackedObjects(parts.get(i), detectionTime);
+            } else {
+                outstandingShardWork.add(future);
+            }
+        }
+    }
+
+    /**
+     * Fuses the buffered tracked objects whose pose has arrived, on the shards that own them if there are shards.
+     */
+    private void releasePendingTrackedObjects() {
+        if (shards.isEmpty()) {
+            fusionSlam.releasePendingTrackedObjects(currentTick);
+            return;
+        }
+        for (PendingTrackedObjects.Release release : fusionSlam.takeReleasedTrackedObjects(currentTick)) {
+            routeToShards(release.getTrackedObjects(), release.getDetectionTime());
+        }
     }
 
-    private void handlePoseEvent(PoseEvent event) {
-        Pose currentPose = event.getPose();
-        if (currentPose != null) {
-            System.out.println("FusionSlamService: Received PoseEvent at time " + currentPose.getTime());
-            fusionSlam.addPose(currentPose);
+    /**
+     * Waits, for at most {@link #SHARD_WAIT_MILLIS} in all, until the shards fused everything routed
+     * to them, so the output includes it.
+     */
+    private void awaitShards() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHARD_WAIT_MILLIS);
+        int unfinished = 0;
+        for (Future<Void> future : outstandingShardWork) {
+            long remaining = deadline - System.nanoTime();
+            if (!future.isDone() && remaining > 0) {
+                future.get(remaining, TimeUnit.NANOSECONDS);
+            }
+            if (!future.isDone()) {
+                unfinished++;
+            }
+        }
+        if (unfinished > 0) {
+            System.err.println("FusionSlamService: " + unfinished + " shard batches were not fused before output.");
         }
+        outstandingShardWork.clear();
     }
 
     private void handleCrashedBroadcast(CrashedBroadcast crashed) {
         System.out.println("FusionSlamService: Received CrashedBroadcast from " + crashed.getMessage());
+        awaitShards();
         fusionSlam.createErrorOutputFile(crashed.getMessage(), crashed.getId());
         sendBroadcast(new TerminatedBroadcast("FusionSlamService"));
         terminate();
@@ -71,6 +156,7 @@ public class FusionSlamService extends MicroService {
         synchronized (this) {
             if (fusionSlam.decreaseServiceCounter()) {
                 System.out.println("FusionSlamService: All services have completed. Ending simulation...");
+                awaitShards();
                 fusionSlam.createOutputFile();
                 sendBroadcast(new TerminatedBroadcast("FusionSlamService"));
                 terminate();
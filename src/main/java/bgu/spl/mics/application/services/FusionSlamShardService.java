@@ -0,0 +1,58 @@
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.CrashedBroadcast;
+import bgu.spl.mics.application.messages.FusionShardEvent;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.objects.FusionSlam;
+
+/**
+ * One Fusion-SLAM shard. It fuses the tracked objects whose ids hash to it, so no two shards ever
+ * update the same landmark. Shards share FusionSlam's pose timeline and landmark registry, which
+ * is how their landmarks end up in a single output file, in creation order.
+ * <p>
+ * A shard only stops on FusionSlamService's TerminatedBroadcast, even after a crash. That broadcast
+ * is sent after the last batch routed to the shard, so everything queued is fused first.
+ */
+public class FusionSlamShardService extends MicroService {
+    private final FusionSlam fusionSlam;
+    private final int shard;
+
+    public FusionSlamShardService(int shard, FusionSlam fusionSlam) {
+        super("FusionSlamShard" + shard);
+        this.shard = shard;
+        this.fusionSlam = fusionSlam;
+    }
+
+    /**
+     * @return the shard that owns the object with the given {@link bgu.spl.mics.application.objects.ObjectIds} symbol.
+     */
+    public static int shardOf(int symbol, int shardCount) {
+        return Math.floorMod(symbol, shardCount);
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    @Override
+    protected void initialize() {
+        System.out.println(getName() + " initialized.");
+
+        subscribeEvent(FusionShardEvent.class, this::handleFusionShardEvent);
+        subscribeBroadcast(CrashedBroadcast.class, crashed ->
+                System.out.println(getName() + ": CrashedBroadcast from " + crashed.getMessage() + "; fusing what is queued."));
+        subscribeBroadcast(TerminatedBroadcast.class, this::handleTerminatedBroadcast);
+    }
+
+    private void handleFusionShardEvent(FusionShardEvent event) {
+        fusionSlam.processTrackedObjects(event.getTrackedObjects(), event.getTime());
+        complete(event, null);
+    }
+
+    private void handleTerminatedBroadcast(TerminatedBroadcast terminated) {
+        if ("FusionSlamService".equals(terminated.getMessage())) {
+            terminate();
+        }
+    }
+}
@@ -7,12 +7,13 @@ import bgu.spl.mics.application.objects.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * LiDarService is responsible for processing data from the LiDAR sensor and
  * sending TrackedObjectsEvents to the FusionSLAM service.
  */
-public class LiDarService extends MicroService {
+public class LiDarService extends MicroService implements CheckpointManager.Participant {
     private final LiDarWorkerTracker liDarWorkerTracker;
     private final LiDarDataBase liDarDataBase;
     private final List<TrackedObject> waitingTrackedObjects;
@@ -22,12 +23,27 @@ public class LiDarService extends MicroService {
         super("LiDarService" + LiDarWorkerTracker.getId());
         this.liDarWorkerTracker = LiDarWorkerTracker;
         this.liDarDataBase = LiDarDataBase.getInstance();
-        this.waitingTrackedObjects = new ArrayList<>();
+        this.waitingTrackedObjects = new CopyOnWriteArrayList<>();
         this.currentTick = 0;
+        liDarDataBase.registerWorker(getName());
+        CheckpointManager.getInstance().register(this);
 
         System.out.println("LiDarService initialized for LiDarWorkerTracker ID: " + liDarWorkerTracker.getId());
     }
 
+    /**
+     * Saves the tracked objects held back until the worker's frequency has passed.
+     */
+    @Override
+    public void saveCheckpoint(SimulationCheckpoint checkpoint) {
+        checkpoint.putLidarWaiting(getName(), waitingTrackedObjects);
+    }
+
+    @Override
+    public void restoreCheckpoint(SimulationCheckpoint checkpoint) {
+        waitingTrackedObjects.addAll(checkpoint.getLidarWaiting(getName()));
+    }
+
     @Override
     protected void initialize() {
         System.out.println(getName() + " started");
@@ -40,7 +56,7 @@ public class LiDarService extends MicroService {
 
     private void handleTerminatedBroadcast(TerminatedBroadcast terminated) {
         if(terminated.getMessage() == "TimeService") {
-            terminate();
+            shutdown();
         }
         System.out.println(getName() + ": Received TerminatedBroadcast - " + terminated.getMessage());
     }
@@ -48,30 +64,44 @@ public class LiDarService extends MicroService {
     private void handleCrashedBroadcast(CrashedBroadcast crashed) {
         System.out.println(getName() + ": Received CrashedBroadcast from " + crashed.getMessage());
         liDarWorkerTracker.setStatus(STATUS.ERROR);
-        terminate();
+        shutdown();
     }
 
     private void handleTickBroadcast(TickBroadcast tick) {
         currentTick = tick.getTime();
 
-        if (liDarDataBase.getLastTime() + liDarWorkerTracker.getFrequency() < currentTick) {
+        if (!liDarDataBase.isLive() && liDarDataBase.getLastTime() + liDarWorkerTracker.getFrequency() < currentTick) {
             liDarWorkerTracker.setStatus(STATUS.DOWN);
             sendBroadcast(new TerminatedBroadcast(getName()));
-            terminate();
+            shutdown();
             return;
         }
 
         if (detectAndHandleErrors()) return;
 
         processWaitingTrackedObjects();
+        liDarDataBase.releaseForWorker(getName(), currentTick, liDarWorkerTracker.getFrequency());
     }
 
 
+    /**
+     * Releases this worker's hold on the LiDAR database, reports downsampling and terminates.
+     */
+    private void shutdown() {
+        liDarDataBase.unregisterWorker(getName());
+        CheckpointManager.getInstance().unregister(this);
+        PointDownsampler downsampler = liDarWorkerTracker.getDownsampler();
+        if (downsampler != null) {
+            System.out.println(getName() + ": Downsampling " + downsampler.report());
+        }
+        terminate();
+    }
+
     private boolean detectAndHandleErrors() {
         if (liDarWorkerTracker.detectError(currentTick, liDarDataBase)) {
             System.out.println(getName() + ": ERROR detected. Sending CrashedBroadcast and terminating.");
             sendBroadcast(new CrashedBroadcast(getName(), "Sensor " + getName() + " disconnected"));
-            terminate();
+            shutdown();
             return true;
         }
         return false;
@@ -93,6 +123,12 @@ public class LiDarService extends MicroService {
 
     private void handleDetectObjectsEvent(DetectObjectsEvent event) {
         int detectionTime = event.getDetectedObjects().getTime();
+        if (!liDarDataBase.isRetained(detectionTime)) {
+            System.err.println(getName() + ": LiDAR data for time " + detectionTime
+                    + " was already evicted (retention " + liDarDataBase.getRetention() + " ticks). Detection dropped.");
+            complete(event, false);
+            return;
+        }
         List<TrackedObject> trackedObjects = liDarWorkerTracker.processDetectedObjects(
                 event.getDetectedObjects().getDetectedObjects(),
                 detectionTime,
@@ -106,6 +142,7 @@ public class LiDarService extends MicroService {
                 waitingTrackedObjects.addAll(trackedObjects);
             }
         }
+        complete(event, true);
     }
 
     private void sendTrackedObjectsEvent(List<TrackedObject> trackedObjects) {
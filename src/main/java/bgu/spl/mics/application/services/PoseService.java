@@ -2,24 +2,26 @@ package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
-import bgu.spl.mics.application.messages.PoseEvent;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.objects.GPSIMU;
 import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.PoseRing;
 import bgu.spl.mics.application.objects.STATUS;
 
 /**
  * PoseService is responsible for maintaining the robot's current pose (position and orientation)
- * and broadcasting PoseEvents at every tick.
+ * and publishing it to the {@link PoseRing} at every tick, where Fusion-SLAM reads it directly.
  */
 public class PoseService extends MicroService {
     private final GPSIMU gpsimu;
+    private final PoseRing poseRing;
     private Pose currentPose;
 
     public PoseService(GPSIMU gpsimu) {
         super("PoseService");
         this.gpsimu = gpsimu;
+        this.poseRing = PoseRing.getInstance();
         this.currentPose = new Pose(0, 0, 0, 0); // Default initial pose.
     }
 
@@ -47,7 +49,6 @@ public class PoseService extends MicroService {
 
         else {
             updateCurrentPose(currentTime);
-            sendPoseEvent(currentTime);
         }
     }
 
@@ -55,15 +56,11 @@ public class PoseService extends MicroService {
         Pose newPose = gpsimu.getPoseByTime(time);
         if (newPose != null) {
             currentPose = newPose;
+            poseRing.publish(newPose);
+            System.out.println(getName() + ": Published pose for time " + time + ".");
         }
     }
 
-    private void sendPoseEvent(int time) {
-        PoseEvent poseEvent = new PoseEvent(time, currentPose);
-        sendEvent(poseEvent);
-        System.out.println(getName() + ": Sent PoseEvent for time " + time + ".");
-    }
-
     private void handleCrashedBroadcast(CrashedBroadcast crashedBroadcast) {
         System.out.println(getName() + ": Received CrashedBroadcast, terminating.");
         gpsimu.setStatus(STATUS.ERROR);
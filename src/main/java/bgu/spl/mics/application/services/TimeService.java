@@ -1,23 +1,36 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.MessageBusImpl;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.CheckpointManager;
 import bgu.spl.mics.application.objects.STATUS;
 import bgu.spl.mics.application.objects.StatisticalFolder;
 
+import java.util.concurrent.TimeUnit;
+
 public class TimeService extends MicroService {
+    // how long a checkpoint waits for the services to finish the previous tick before it is postponed
+    private static final long CHECKPOINT_DRAIN_MILLIS = 2_000;
     private int duration;
     private final int speed;
     private int currentTime;
     private boolean serviceExist;
 
     public TimeService(int tickTime, int duration) {
+        this(tickTime, duration, 0);
+    }
+
+    /**
+     * @param startTick the first tick to send; later than 0 when resuming from a checkpoint.
+     */
+    public TimeService(int tickTime, int duration, int startTick) {
         super("TimeService - TickTime: " + tickTime + ", Duration: " + duration);
         this.duration = duration;
         this.speed = tickTime;
-        this.currentTime = 0;
+        this.currentTime = startTick;
         this.serviceExist=true;
     }
 
@@ -35,26 +48,45 @@ public class TimeService extends MicroService {
         if (statisticalFolder == null) {
             throw new IllegalStateException("StatisticalFolder instance is null");
         }
+        CheckpointManager checkpoints = CheckpointManager.getInstance();
         Thread tickThread = new Thread(() -> {
             try {
                 while (serviceExist && currentTime < duration) {
                     Thread.sleep(100);
+                    if (checkpoints.isDue(currentTime)) {
+                        cutCheckpoint(checkpoints);
+                    }
                     System.out.println("TimeService: Current Tick = " + currentTime);
                     sendBroadcast(new TickBroadcast(currentTime));
                     currentTime++;
                     statisticalFolder.incrementSystemRuntime();
                 }
-                sendBroadcast(new TerminatedBroadcast("TimeService"));
-                terminate();
-                System.out.println("TimeService has terminated...");
-
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 System.err.println("TimeService thread interrupted: " + e.getMessage());
             } catch (Exception e) {
                 System.err.println("TimeService encountered an error: " + e.getMessage());
             }
+            sendBroadcast(new TerminatedBroadcast("TimeService"));
+            terminate();
+            System.out.println("TimeService has terminated...");
         });
         tickThread.start();
     }
-}
\ No newline at end of file
+
+    /**
+     * Cuts the checkpoint due before the current tick once every service has finished the previous
+     * one; postpones it if they are still busy, and never lets it stop the ticks.
+     */
+    private void cutCheckpoint(CheckpointManager checkpoints) throws InterruptedException {
+        if (!MessageBusImpl.getInstance().awaitIdle(CHECKPOINT_DRAIN_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkpoints.postpone(currentTime);
+            return;
+        }
+        try {
+            checkpoints.checkpoint(currentTime);
+        } catch (RuntimeException e) {
+            System.err.println("TimeService: Checkpoint before tick " + currentTime + " failed: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.input.ChunkedJsonArrayParser;
+import bgu.spl.mics.application.input.SensorTypeAdapters;
+import bgu.spl.mics.application.objects.CloudPointStore;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChunkedJsonArrayParserTest checks that the chunked adapters read the same records as plain Gson,
+ * wherever the chunk boundaries fall.
+ */
+public class ChunkedJsonArrayParserTest {
+
+    private static final String CAMERA = "[\n"
+            + "  {\"time\": 1, \"detectedObjects\": [{\"id\": \"Wall,1\", \"description\": \"a ] in it\"}]},\n"
+            + "  {\"time\": 2, \"detectedObjects\": [{\"id\": \"Door}2\", \"description\": \"say \\\"hi\\\"\"},"
+            + " {\"id\": \"Chair\\\\3\", \"description\": \"]},{\\\"time\\\":9\"}]},\n"
+            + "  {\"time\": 3, \"detectedObjects\": []},\n"
+            + "  {\"time\": 4, \"detectedObjects\": [{\"id\": \"Caf\\u00e9_4\", \"description\": \"tab\\tand\\nnewline\"}]}\n"
+            + "]";
+
+    private static final String LIDAR = "[{\"time\":1,\"id\":\"Wall,1\",\"cloudPoints\":[[0.5,-1.25,0.1],[2.0,3.0,0.1]]},"
+            + "{\"time\":1,\"id\":\"a]b}c\\\"d\",\"cloudPoints\":[]},"
+            + "{\"time\":2,\"id\":\"ERROR\",\"cloudPoints\":[[1e-3,-4.5E2]]}]";
+
+    private static final String POSES = "[{\"time\":1,\"x\":0.5,\"y\":-1.0,\"yaw\":30.25},"
+            + "{\"time\":2,\"x\":1.5,\"y\":-2.0,\"yaw\":-45.0},"
+            + "{\"yaw\":90.0,\"time\":3,\"y\":0,\"x\":2}]";
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void testCameraRecordsMatchGsonForEveryChunkSize() throws IOException {
+        StampedDetectedObjects[] expected = gson.fromJson(CAMERA, StampedDetectedObjects[].class);
+        for (int chunk = 1; chunk <= CAMERA.length(); chunk++) {
+            List<StampedDetectedObjects> actual = ChunkedJsonArrayParser.parse(CAMERA, chunk,
+                    SensorTypeAdapters.StampedDetectedObjectsAdapter::new);
+            assertEquals(expected.length, actual.size(), "Chunk size " + chunk);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getTime(), actual.get(i).getTime());
+                List<DetectedObject> expectedObjects = expected[i].getDetectedObjects();
+                List<DetectedObject> actualObjects = actual.get(i).getDetectedObjects();
+                assertEquals(expectedObjects.size(), actualObjects.size());
+                for (int j = 0; j < expectedObjects.size(); j++) {
+                    assertEquals(expectedObjects.get(j).getId(), actualObjects.get(j).getId(), "Chunk size " + chunk);
+                    assertEquals(expectedObjects.get(j).getDescription(), actualObjects.get(j).getDescription());
+                }
+            }
+        }
+        assertEquals("Chair\\3", ChunkedJsonArrayParser.parse(CAMERA, 1, SensorTypeAdapters.StampedDetectedObjectsAdapter::new)
+                .get(1).getDetectedObjects().get(1).getId());
+    }
+
+    @Test
+    void testLidarRecordsMatchGsonForEveryChunkSize() throws IOException {
+        List<Map<String, Object>> expected = gson.fromJson(LIDAR, new TypeToken<List<Map<String, Object>>>() {}.getType());
+        for (int chunk = 1; chunk <= LIDAR.length(); chunk++) {
+            CloudPointStore store = new CloudPointStore(false);
+            List<StampedCloudPoints> actual = ChunkedJsonArrayParser.parse(LIDAR, chunk,
+                    () -> new SensorTypeAdapters.StampedCloudPointsAdapter(store));
+            assertEquals(expected.size(), actual.size(), "Chunk size " + chunk);
+            for (int i = 0; i < expected.size(); i++) {
+                Map<String, Object> record = expected.get(i);
+                assertEquals(record.get("id"), actual.get(i).getId());
+                assertEquals(((Number) record.get("time")).intValue(), actual.get(i).getTime());
+                List<?> points = (List<?>) record.get("cloudPoints");
+                assertEquals(points.size(), actual.get(i).getCloudPoints().size());
+                for (int p = 0; p < points.size(); p++) {
+                    List<?> point = (List<?>) points.get(p);
+                    assertEquals(((Number) point.get(0)).doubleValue(), actual.get(i).getCloudPoints().get(p).getX(), 0.0);
+                    assertEquals(((Number) point.get(1)).doubleValue(), actual.get(i).getCloudPoints().get(p).getY(), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPosesMatchGsonForEveryChunkSize() throws IOException {
+        Pose[] expected = gson.fromJson(POSES, Pose[].class);
+        for (int chunk = 1; chunk <= POSES.length(); chunk++) {
+            List<Pose> actual = ChunkedJsonArrayParser.parse(POSES, chunk, SensorTypeAdapters.PoseAdapter::new);
+            assertEquals(expected.length, actual.size(), "Chunk size " + chunk);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getTime(), actual.get(i).getTime());
+                assertEquals(expected[i].getX(), actual.get(i).getX(), 0.0f);
+                assertEquals(expected[i].getY(), actual.get(i).getY(), 0.0f);
+                assertEquals(expected[i].getYaw(), actual.get(i).getYaw(), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyArray() throws IOException {
+        for (String text : new String[]{"[]", "  [ ]  ", "[\n]"}) {
+            assertTrue(ChunkedJsonArrayParser.parse(text, 1, SensorTypeAdapters.PoseAdapter::new).isEmpty(), text);
+            assertTrue(ChunkedJsonArrayParser.parse(text, SensorTypeAdapters.PoseAdapter::new).isEmpty(), text);
+        }
+    }
+
+    @Test
+    void testNonArrayIsRejected() {
+        assertThrows(JsonParseException.class,
+                () -> ChunkedJsonArrayParser.parse("{\"time\":1}", 1, SensorTypeAdapters.PoseAdapter::new));
+    }
+}
@@ -0,0 +1,162 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.FusionSlamOutputWriter;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TrackedObject;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FusionSlamOutputWriterTest parses the written output files back and compares them with the landmarks.
+ */
+public class FusionSlamOutputWriterTest {
+
+    private static final String AWKWARD_ID = "Door_\"q\"\\é";
+
+    private Path output;
+    private Path errorOutput;
+    private FusionSlamOutputWriter writer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        output = Files.createTempFile("output_file", ".json");
+        errorOutput = Files.createTempFile("OutputError", ".json");
+        writer = new FusionSlamOutputWriter(StatisticalFolder.getInstance());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(errorOutput);
+    }
+
+    /**
+     * Landmarks in an order that is not sorted by id, with the awkward id in the second parallel chunk.
+     */
+    private static List<LandMark> landmarks(int count) {
+        List<LandMark> landmarks = new ArrayList<>();
+        for (int i = count - 1; i >= 0; i--) {
+            String id = i == count / 2 + 2 ? AWKWARD_ID : "Wall_" + i;
+            List<CloudPoint> points = new ArrayList<>();
+            for (int p = 0; p <= i % 3; p++) {
+                points.add(new CloudPoint(i + p * 0.25, -i - p * 0.5));
+            }
+            LandMark landmark = new LandMark(id, i % 2 == 0 ? "Wall" : "Ünïcode \"wall\"", points);
+            if (i % 7 == 0) {
+                landmark.enableVarianceTracking();
+            }
+            landmarks.add(landmark);
+        }
+        return landmarks;
+    }
+
+    private static JsonObject parse(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+
+    private static void assertLandmarks(List<LandMark> expected, JsonObject written, String descriptionKey,
+                                        String coordinatesKey, boolean withVariances) {
+        assertEquals(expected.size(), written.size());
+        Iterator<Map.Entry<String, JsonElement>> entries = written.entrySet().iterator();
+        for (LandMark landmark : expected) {
+            Map.Entry<String, JsonElement> entry = entries.next();
+            assertEquals(landmark.getId(), entry.getKey(), "Landmarks keep the map order.");
+            JsonObject value = entry.getValue().getAsJsonObject();
+            assertEquals(landmark.getId(), value.get("id").getAsString());
+            assertEquals(landmark.getDescription(), value.get(descriptionKey).getAsString());
+            JsonArray coordinates = value.getAsJsonArray(coordinatesKey);
+            assertEquals(landmark.getPointCount(), coordinates.size());
+            for (int p = 0; p < coordinates.size(); p++) {
+                assertEquals(landmark.getX(p), coordinates.get(p).getAsJsonObject().get("x").getAsDouble(), 0.0);
+                assertEquals(landmark.getY(p), coordinates.get(p).getAsJsonObject().get("y").getAsDouble(), 0.0);
+            }
+            assertEquals(withVariances && landmark.isVarianceTracked(), value.has("variances"), landmark.getId());
+            if (value.has("observations")) {
+                assertEquals(landmark.getObservations(0), value.getAsJsonArray("observations").get(0).getAsInt());
+            }
+        }
+    }
+
+    private static void assertStatistics(JsonObject written) {
+        StatisticalFolder statistics = StatisticalFolder.getInstance();
+        assertEquals(statistics.getSystemRuntime(), written.get("systemRuntime").getAsInt());
+        assertEquals(statistics.getNumDetectedObjects(), written.get("numDetectedObjects").getAsInt());
+        assertEquals(statistics.getNumTrackedObjects(), written.get("numTrackedObjects").getAsInt());
+        assertEquals(statistics.getNumLandmarks(), written.get("numLandmarks").getAsInt());
+    }
+
+    @Test
+    void testSmallMapIsStreamed() throws IOException {
+        List<LandMark> landmarks = landmarks(10);
+        writer.writeOutput(output, landmarks);
+        JsonObject written = parse(output);
+        assertStatistics(written);
+        assertLandmarks(landmarks, written.getAsJsonObject("landMarks"), "description", "coordinates", true);
+        assertTrue(written.getAsJsonObject("landMarks").has(AWKWARD_ID));
+    }
+
+    @Test
+    void testLargeMapIsSplicedInOrder() throws IOException {
+        List<LandMark> landmarks = landmarks(2 * FusionSlamOutputWriter.PARALLEL_CHUNK + 17);
+        writer.writeOutput(output, landmarks);
+        JsonObject written = parse(output);
+        assertStatistics(written);
+        assertLandmarks(landmarks, written.getAsJsonObject("landMarks"), "description", "coordinates", true);
+        assertEquals(AWKWARD_ID, written.getAsJsonObject("landMarks").getAsJsonObject(AWKWARD_ID).get("id").getAsString());
+    }
+
+    @Test
+    void testErrorOutput() throws IOException {
+        List<LandMark> landmarks = landmarks(FusionSlamOutputWriter.PARALLEL_CHUNK + 1);
+        StampedDetectedObjects frame = new StampedDetectedObjects(4,
+                new ArrayList<>(Collections.singletonList(new DetectedObject(AWKWARD_ID, "Door"))));
+        TrackedObject tracked = new TrackedObject("Wall_1", 4, "Wall", new ArrayList<>(Collections.singletonList(new CloudPoint(1, 2))));
+        List<Pose> poses = new ArrayList<>();
+        poses.add(new Pose(1.5f, -2f, 90f, 3));
+
+        writer.writeErrorOutput(errorOutput, "Camera \"1\" disconnected", "Camera1",
+                Collections.singletonMap("1", frame),
+                Collections.singletonMap("1", Collections.singletonList(tracked)),
+                poses, landmarks);
+        JsonObject written = parse(errorOutput);
+
+        assertEquals("Camera \"1\" disconnected", written.get("error").getAsString());
+        assertFalse(written.has("{error"));
+        assertEquals("Camera1", written.get("faultySensor").getAsString());
+        assertEquals(AWKWARD_ID, written.getAsJsonObject("lastCamerasFrame").getAsJsonObject("Camera1")
+                .getAsJsonArray("detectedObjects").get(0).getAsJsonObject().get("id").getAsString());
+        assertEquals(1, written.getAsJsonObject("lastLiDarWorkerTrackersFrame").getAsJsonArray("LiDarWorkerTracker1").size());
+        JsonObject pose = written.getAsJsonArray("poses").get(0).getAsJsonObject();
+        assertEquals(3, pose.get("time").getAsInt());
+        assertEquals(1.5, pose.get("x").getAsDouble(), 0.0);
+
+        JsonObject statistics = written.getAsJsonObject("statistics");
+        assertStatistics(statistics);
+        assertLandmarks(landmarks, statistics.getAsJsonObject("landMarks"), "Description", "Coordinates", false);
+    }
+}
@@ -0,0 +1,147 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.FusionShardEvent;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.PoseRing;
+import bgu.spl.mics.application.objects.TrackedObject;
+import bgu.spl.mics.application.services.FusionSlamService;
+import bgu.spl.mics.application.services.FusionSlamShardService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FusionSlamServiceTest {
+    private static final int SHARDS = 2;
+
+    private MessageBusImpl messageBus;
+    private FusionSlam fusionSlam;
+    private List<RecordingShard> shards;
+    private FusionSlamService router;
+
+    /**
+     * A shard that records the batches routed to it instead of fusing them.
+     */
+    private static class RecordingShard extends FusionSlamShardService {
+        private final List<FusionShardEvent> received = new CopyOnWriteArrayList<>();
+
+        RecordingShard(int shard, FusionSlam fusionSlam) {
+            super(shard, fusionSlam);
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(FusionShardEvent.class, event -> {
+                received.add(event);
+                complete(event, null);
+            });
+        }
+
+        List<String> receivedIds() {
+            List<String> ids = new ArrayList<>();
+            for (FusionShardEvent event : received) {
+                for (TrackedObject object : event.getTrackedObjects()) {
+                    ids.add(object.getId());
+                }
+            }
+            return ids;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        messageBus = MessageBusImpl.getInstance();
+        for (MicroService leftover : new ArrayList<>(messageBus.getMicroServiceQueues().keySet())) {
+            messageBus.unregister(leftover);
+        }
+        fusionSlam = FusionSlam.getInstance(5, 15, null);
+        shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            shards.add(new RecordingShard(i, fusionSlam));
+        }
+        router = new FusionSlamService(fusionSlam, new ArrayList<FusionSlamShardService>(shards));
+        List<MicroService> services = new ArrayList<>(shards);
+        services.add(router);
+        for (MicroService service : services) {
+            Thread thread = new Thread(service);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!subscribed(router, TrackedObjectsEvent.class) || !subscribed(shards.get(SHARDS - 1), FusionShardEvent.class)) {
+            assertTrue(System.nanoTime() < deadline, "The services did not start.");
+            Thread.sleep(1);
+        }
+    }
+
+    private boolean subscribed(MicroService service, Class<? extends Event<?>> type) {
+        return messageBus.getEventSubscribers().containsKey(type) && messageBus.getEventSubscribers().get(type).contains(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageBus.unregister(router);
+        for (MicroService shard : shards) {
+            messageBus.unregister(shard);
+        }
+    }
+
+    private static List<TrackedObject> trackedObjects(String prefix, int time) {
+        List<TrackedObject> objects = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            objects.add(new TrackedObject(prefix + i, time, "Wall", Arrays.asList(new CloudPoint(i, i))));
+        }
+        return objects;
+    }
+
+    private void assertRoutedByOwner(List<TrackedObject> objects) {
+        List<String> all = new ArrayList<>();
+        for (RecordingShard shard : shards) {
+            for (TrackedObject object : objects) {
+                boolean owned = FusionSlamShardService.shardOf(object.getSymbol(), SHARDS) == shard.getShard();
+                assertEquals(owned, shard.receivedIds().contains(object.getId()),
+                        object.getId() + " should reach its owning shard only.");
+            }
+            all.addAll(shard.receivedIds());
+        }
+        assertEquals(objects.size(), all.size(), "Every object is routed once.");
+    }
+
+    @Test
+    void testTrackedObjectsAreRoutedToTheirShards() throws InterruptedException {
+        List<TrackedObject> objects = trackedObjects("Routed_", 700);
+        Future<Void> future = messageBus.sendEvent(new TrackedObjectsEvent(700, objects), router);
+        assertNotNull(future);
+        assertTrue(messageBus.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertTrue(future.isDone());
+        assertRoutedByOwner(objects);
+    }
+
+    @Test
+    void testReleasedTrackedObjectsAreRoutedToTheirShards() throws InterruptedException {
+        PoseRing ring = PoseRing.getInstance();
+        int time = Math.max(800, ring.getLatestTime() + 1);
+        List<TrackedObject> objects = trackedObjects("Released_", time);
+        fusionSlam.processTrackedObjects(objects, time);
+        assertTrue(fusionSlam.getPendingTrackedObjects().getPending() > 0, "The objects wait for their pose.");
+
+        // the pose arrives through the ring; the next batch the router handles releases the buffered objects
+        ring.publish(new Pose(0, 0, 0, time));
+        messageBus.sendEvent(new TrackedObjectsEvent(time, new ArrayList<>()), router);
+        assertTrue(messageBus.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertRoutedByOwner(objects);
+        assertNull(fusionSlam.findLandmarkById("Released_0"), "The router itself should not fuse released objects.");
+    }
+}
@@ -121,6 +121,141 @@ class FusionSlamTest {
     }
 
 
+    @Test
+    void testTrackedObjectsBufferedUntilPoseArrives() {
+        fusionSlamInstance.getLandMarks().clear();
+        long bufferedBefore = fusionSlamInstance.getPendingTrackedObjects().getBuffered();
+
+        // The LiDAR is ahead of the pose for time 100.
+        List<TrackedObject> trackedObjects = new ArrayList<>();
+        trackedObjects.add(new TrackedObject("Door_1", 100, "Door", List.of(new CloudPoint(1.0, 1.0))));
+        fusionSlamInstance.processTrackedObjects(trackedObjects, 100);
+        assertTrue(fusionSlamInstance.getLandMarks().isEmpty(), "Objects without a pose should wait.");
+        assertEquals(bufferedBefore + 1, fusionSlamInstance.getPendingTrackedObjects().getBuffered());
+
+        fusionSlamInstance.addPose(new Pose(1, 1, 0, 100));
+        fusionSlamInstance.releasePendingTrackedObjects(100);
+        assertEquals(1, fusionSlamInstance.getLandMarks().size(), "The buffered object should be fused once its pose arrives.");
+        assertTrue(Math.abs(fusionSlamInstance.getLandMarks().get(0).getCoordinates().get(0).getX() - 2.0) < 0.001);
+
+        fusionSlamInstance.getLandMarks().clear();
+    }
+
+    @Test
+    void testParallelFusionMatchesSerialFusion() {
+        // A batch at the parallel threshold must give the same landmarks, in the same order, as one fused serially.
+        List<TrackedObject> batch = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int landmark = i % 12;
+            List<CloudPoint> points = new ArrayList<>();
+            for (int p = 0; p <= i % 5; p++) {
+                points.add(new CloudPoint(landmark + i * 0.25 + p, p - i * 0.5));
+            }
+            batch.add(new TrackedObject("Batch_" + landmark, 200, "Wall", points));
+        }
+        fusionSlamInstance.addPose(new Pose(1, -2, 30, 200));
+
+        fusionSlamInstance.getLandMarks().clear();
+        fusionSlamInstance.setParallelThreshold(Integer.MAX_VALUE);
+        fusionSlamInstance.processTrackedObjects(batch, 200);
+        List<LandMark> serial = new ArrayList<>();
+        for (LandMark landmark : fusionSlamInstance.getLandMarks()) {
+            serial.add(landmark.copy());
+        }
+
+        fusionSlamInstance.getLandMarks().clear();
+        fusionSlamInstance.setParallelThreshold(batch.size());
+        fusionSlamInstance.processTrackedObjects(batch, 200);
+        List<LandMark> parallel = fusionSlamInstance.getLandMarks();
+
+        assertEquals(12, serial.size());
+        assertEquals(serial.size(), parallel.size(), "Both paths should map the same landmarks.");
+        for (int l = 0; l < serial.size(); l++) {
+            LandMark expected = serial.get(l);
+            LandMark actual = parallel.get(l);
+            assertEquals(expected.getId(), actual.getId(), "Landmarks should be mapped in batch order.");
+            assertEquals(expected.getPointCount(), actual.getPointCount());
+            for (int i = 0; i < expected.getPointCount(); i++) {
+                assertEquals(expected.getX(i), actual.getX(i), 1e-9, "Averaged x of " + expected.getId());
+                assertEquals(expected.getY(i), actual.getY(i), 1e-9, "Averaged y of " + expected.getId());
+                assertEquals(expected.getObservations(i), actual.getObservations(i));
+            }
+        }
+
+        fusionSlamInstance.setParallelThreshold(FusionSlam.DEFAULT_PARALLEL_THRESHOLD);
+        fusionSlamInstance.getLandMarks().clear();
+    }
+
+    @Test
+    void testPoseRingDrainedEveryTickKeepsEveryPose() {
+        // More ticks than the ring holds pass without any tracked object asking for a pose.
+        PoseRing ring = PoseRing.getInstance();
+        int first = Math.max(20_000, ring.getLatestTime() + 1);
+        int ticks = ring.capacity() * 2;
+        for (int time = first; time < first + ticks; time++) {
+            ring.publish(new Pose(time % 7, 0, 0, time));
+            fusionSlamInstance.drainPoseRing();
+        }
+        Pose earliest = fusionSlamInstance.getPoseByTime(first);
+        assertNotNull(earliest, "A pose older than the ring's capacity should have been copied out of the ring.");
+        assertEquals(first % 7, earliest.getX(), 1e-6);
+    }
+
+    @Test
+    void testDrainedPoseIsReadWithoutTheDrainLock() throws InterruptedException {
+        PoseRing ring = PoseRing.getInstance();
+        int time = ring.getLatestTime() + 1;
+        ring.publish(new Pose(3, 4, 0, time));
+        fusionSlamInstance.drainPoseRing();
+
+        Pose[] found = new Pose[1];
+        Thread reader = new Thread(() -> found[0] = fusionSlamInstance.getPoseByTime(time));
+        synchronized (fusionSlamInstance) { // a drain in progress on another thread
+            reader.start();
+            reader.join(2_000);
+            assertFalse(reader.isAlive(), "A pose that was already drained should not wait for the drain lock.");
+        }
+        assertNotNull(found[0]);
+        assertEquals(3, found[0].getX(), 1e-6);
+    }
+
+    @Test
+    void testPoseTimeline_InterpolatesAndRetains() {
+        // Poses at ticks 10 and 12 with the yaw crossing 180 degrees; tick 11 is missing.
+        PoseTimeline timeline = new PoseTimeline(5);
+        timeline.put(new Pose(0, 0, 170, 10));
+        timeline.put(new Pose(2, 4, -170, 12));
+
+        Pose between = timeline.getOrInterpolate(11);
+        assertNotNull(between, "A pose between two known poses should be interpolated.");
+        assertTrue(Math.abs(between.getX() - 1) < 0.001 && Math.abs(between.getY() - 2) < 0.001, "Position should be halfway.");
+        assertTrue(Math.abs(Math.abs(between.getYaw()) - 180) < 0.001, "Yaw should turn the short way round.");
+        assertNull(timeline.get(11), "Exact lookup should not interpolate.");
+
+        // Retention of 5 ticks drops tick 10 once tick 16 arrives.
+        timeline.put(new Pose(0, 0, 0, 16));
+        assertNull(timeline.get(10), "Poses older than the retention window should be dropped.");
+        assertNotNull(timeline.get(12));
+    }
+
+    @Test
+    void testLandmarkFusion_RunningMeanWithVariance() {
+        LandMark landmark = new LandMark("Pillar_1", "Pillar", new ArrayList<>(List.of(new CloudPoint(0, 0))));
+        landmark.enableVarianceTracking();
+
+        // Every observation has the same weight, not half of the remaining one.
+        landmark.updateCoordinates(new double[]{2, 4}, new double[]{0, 4}, 2);
+        landmark.updateCoordinates(List.of(new CloudPoint(4, 0)));
+        assertEquals(2, landmark.getPointCount(), "A longer observation should add points.");
+        assertEquals(3, landmark.getObservations(0));
+        assertEquals(2.0, landmark.getX(0), 0.001, "The point should be the mean of 0, 2 and 4.");
+        assertEquals(0.0, landmark.getY(0), 0.001);
+        assertEquals(8.0 / 3, landmark.getVariance(0), 0.001, "Variance should be the mean squared distance from the mean.");
+        assertEquals(1, landmark.getObservations(1));
+        assertEquals(0.0, landmark.getVariance(1), 0.001, "A single observation has no spread.");
+        assertEquals(4.0, landmark.getCoordinates().get(1).getY(), 0.001);
+    }
+
     @Test
     void testServiceCounter_ZeroCounterTerminating() {
         // Test the behavior when the service count reaches zero. Expectation: The system should terminate and output the file.
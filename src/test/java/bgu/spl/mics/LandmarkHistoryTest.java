@@ -0,0 +1,67 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.LandmarkHistory;
+import bgu.spl.mics.application.objects.ObjectIds;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LandmarkHistoryTest {
+
+    private static LandMark landmark(String id, double x) {
+        return new LandMark(id, "Wall", new ArrayList<>(List.of(new CloudPoint(x, 0))));
+    }
+
+    @Test
+    void testMapAtEarlierTicks() {
+        LandmarkHistory history = new LandmarkHistory(0);
+        history.record(1, List.of(landmark("Wall_1", 1)));
+        history.record(3, List.of(landmark("Wall_1", 2), landmark("Wall_2", 5)));
+        history.record(3, List.of(landmark("Wall_2", 6)));
+
+        assertTrue(history.getLandmarksAt(0).isEmpty());
+        List<LandMark> atTwo = history.getLandmarksAt(2);
+        assertEquals(1, atTwo.size());
+        assertEquals(1.0, atTwo.get(0).getX(0), 0.0);
+        List<LandMark> atFive = history.getLandmarksAt(5);
+        assertEquals(2, atFive.size());
+        assertEquals(2.0, atFive.get(0).getX(0), 0.0);
+        assertEquals(6.0, atFive.get(1).getX(0), 0.0, "Recording a tick again should replace its version.");
+
+        List<LandmarkHistory.Version> versions = history.getLandmarkHistory("Wall_1");
+        assertEquals(2, versions.size());
+        assertEquals(1, versions.get(0).getTick());
+        assertEquals(3, versions.get(1).getTick());
+        assertTrue(history.getLandmarkHistory("Wall_404").isEmpty());
+    }
+
+    @Test
+    void testQueriesDoNotInternIds() {
+        LandmarkHistory history = new LandmarkHistory(0);
+        history.record(1, List.of(landmark("Wall_1", 1)));
+        int symbols = ObjectIds.size();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(history.getLandmarkHistory("Unmapped_" + i).isEmpty());
+        }
+        assertEquals(symbols, ObjectIds.size(), "Looking up ids that were never mapped should not assign symbols.");
+        assertEquals(ObjectIds.NONE, ObjectIds.lookup("Unmapped_0"));
+        assertEquals(ObjectIds.intern("Wall_1"), ObjectIds.lookup("Wall_1"));
+    }
+
+    @Test
+    void testRetentionDropsOldVersions() {
+        LandmarkHistory history = new LandmarkHistory(2);
+        for (int tick = 1; tick <= 6; tick++) {
+            history.record(tick, List.of(landmark("Door_7", tick)));
+        }
+        assertEquals(4, history.getEarliestTick());
+        assertEquals(4.0, history.getLandmarksAt(4).get(0).getX(0), 0.0);
+        assertEquals(3, history.getLandmarkHistory("Door_7").size());
+        assertThrows(IllegalArgumentException.class, () -> history.getLandmarksAt(3));
+    }
+}
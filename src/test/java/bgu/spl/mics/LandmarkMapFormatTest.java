@@ -0,0 +1,105 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.FusionSlamOutputWriter;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.LandmarkMapFormat;
+import bgu.spl.mics.application.objects.LandmarkMapReader;
+import bgu.spl.mics.application.objects.PriorLandmarkMap;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LandmarkMapFormatTest {
+    private Path file;
+    private List<LandMark> landmarks;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("map", ".bin");
+        LandMark door = new LandMark("Door_1", "Door", new ArrayList<>(List.of(new CloudPoint(1, 2))));
+        door.enableVarianceTracking();
+        door.updateCoordinates(new double[]{3}, new double[]{2}, 1);
+        LandMark wall = new LandMark("Wall_\"2\"", "Wall", new ArrayList<>(List.of(new CloudPoint(-1.5, 4), new CloudPoint(0.25, 5))));
+        landmarks = List.of(door, wall);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        LandmarkMapFormat.write(file, 17, 65, 62, 2, landmarks, false);
+        LandmarkMapReader reader = LandmarkMapReader.open(file);
+
+        assertEquals(2, reader.getLandmarkCount());
+        assertEquals(3L, reader.getTotalPointCount());
+        assertEquals(17, reader.getSystemRuntime());
+        assertEquals(62, reader.getNumTrackedObjects());
+        assertTrue(reader.hasVariances(), "Variances should be written when a landmark tracks them.");
+
+        int wall = reader.indexOf("Wall_\"2\"");
+        assertEquals(1, wall);
+        assertEquals("Wall", reader.getDescription(wall));
+        assertEquals(2, reader.getPointCount(wall));
+        assertEquals(0.25, reader.getX(wall, 1), 0.0);
+        assertEquals(5.0, reader.getY(wall, 1), 0.0);
+        assertEquals(-1, reader.indexOf("Chair_9"));
+
+        LandMark door = reader.getLandmark(reader.indexOf("Door_1"));
+        assertEquals(2.0, door.getX(0), 0.0);
+        assertEquals(2, door.getObservations(0), "Observation counts should survive the round trip.");
+        assertEquals(1.0, door.getVariance(0), 0.001);
+
+        // Fusing into the restored landmark continues the same running mean.
+        door.updateCoordinates(new double[]{5}, new double[]{2}, 1);
+        assertEquals(3.0, door.getX(0), 0.001);
+    }
+
+    @Test
+    void testFloat32IsSmaller() throws IOException {
+        LandmarkMapFormat.write(file, 0, 0, 0, 2, landmarks, true);
+        long float32Size = Files.size(file);
+        LandmarkMapReader reader = LandmarkMapReader.open(file);
+        assertTrue(reader.isFloat32());
+        assertEquals(-1.5, reader.getX(1, 0), 0.0);
+        assertEquals(3L * 2 * Float.BYTES + 3L * (Integer.BYTES + Double.BYTES),
+                float32Size - LandmarkMapFormat.DATA_ALIGNMENT, "The data region should hold packed blocks only.");
+    }
+
+    @Test
+    void testPriorMapFromBinaryAndJson() throws IOException {
+        LandmarkMapFormat.write(file, 17, 65, 62, 2, landmarks, false);
+        PriorLandmarkMap binary = PriorLandmarkMap.open(file);
+        assertTrue(binary.isMemoryMapped());
+        assertEquals(2, binary.size());
+        assertEquals(2, binary.load(binary.indexOf("Door_1")).getObservations(0));
+
+        Path json = Files.createTempFile("output_file", ".json");
+        try {
+            new FusionSlamOutputWriter(StatisticalFolder.getInstance()).writeOutput(json, landmarks);
+            PriorLandmarkMap parsed = PriorLandmarkMap.open(json);
+            assertFalse(parsed.isMemoryMapped());
+            assertEquals("Wall_\"2\"", parsed.getId(1));
+            LandMark door = parsed.load(parsed.indexOf("Door_1"));
+            assertEquals(2, door.getObservations(0), "Observation counts written with the variances should be kept.");
+            assertEquals(1.0, door.getVariance(0), 0.001);
+            LandMark wall = parsed.load(1);
+            assertEquals(1, wall.getObservations(1));
+            assertEquals(0.25, wall.getX(1), 0.0);
+        } finally {
+            Files.deleteIfExists(json);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LandmarkSpatialIndexTest checks range and nearest-neighbour queries against a few landmarks.
+ */
+public class LandmarkSpatialIndexTest {
+
+    private LandmarkSpatialIndex index;
+    private LandMark door;
+    private LandMark wall;
+    private LandMark chair;
+
+    @BeforeEach
+    void setUp() {
+        index = new LandmarkSpatialIndex(1.0);
+        door = landmark("Door_9", new CloudPoint(0.5, 0.5), new CloudPoint(0.8, 0.5));
+        wall = landmark("Wall_9", new CloudPoint(-10, 3), new CloudPoint(0, 3), new CloudPoint(10, 3));
+        chair = landmark("Chair_9", new CloudPoint(5, -5));
+        index.update(door);
+        index.update(wall);
+        index.update(chair);
+    }
+
+    private static LandMark landmark(String id, CloudPoint... points) {
+        List<CloudPoint> coordinates = new ArrayList<>(List.of(points));
+        return new LandMark(id, "Test", coordinates);
+    }
+
+    @Test
+    void testWithinRadius() {
+        List<LandMark> found = index.withinRadius(0, 0, 1);
+        assertEquals(1, found.size(), "Only the door is within 1 of the origin.");
+        assertSame(door, found.get(0));
+
+        found = index.withinRadius(0, 0, 3.5);
+        assertEquals(2, found.size(), "The wall's closest point is 3 away.");
+        assertSame(door, found.get(0), "Results should be ordered by distance.");
+        assertSame(wall, found.get(1));
+    }
+
+    @Test
+    void testNearest() {
+        List<LandMark> nearest = index.nearest(6, -6, 2);
+        assertEquals(2, nearest.size());
+        assertSame(chair, nearest.get(0));
+        assertSame(door, nearest.get(1));
+        assertEquals(3, index.nearest(0, 0, 10).size(), "k larger than the map returns every landmark.");
+    }
+
+    @Test
+    void testUpdateMovesLandmark() {
+        chair.updateCoordinates(new double[]{-5}, new double[]{5}, 1); // averaged to (0, 0)
+        index.update(chair);
+        assertSame(chair, index.nearest(0, 0, 1).get(0), "The index should follow the landmark's new position.");
+        assertTrue(index.withinRadius(5, -5, 1).isEmpty(), "The old position should no longer match.");
+    }
+
+    @Test
+    void testSparseMapQueriesDoNotWalkEmptyCells() {
+        LandmarkSpatialIndex sparse = new LandmarkSpatialIndex(1.0);
+        LandMark near = landmark("Near_9", new CloudPoint(0, 0));
+        LandMark far = landmark("Far_9", new CloudPoint(30000, 30000));
+        sparse.update(near);
+        sparse.update(far);
+
+        long start = System.nanoTime();
+        assertEquals(List.of(near, far), sparse.nearest(0, 0, 2));
+        assertEquals(2, sparse.withinRadius(0, 0, 1e9).size());
+        assertEquals(List.of(far), sparse.nearest(29990, 29990, 1));
+        assertTrue(System.nanoTime() - start < 2_000_000_000L, "Queries should only visit occupied cells.");
+    }
+
+    @Test
+    void testNearestFarFromTheMap() {
+        LandmarkSpatialIndex grid = new LandmarkSpatialIndex(1.0);
+        List<LandMark> all = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            LandMark landmark = landmark("Origin_" + i, new CloudPoint(i % 10, i / 10));
+            all.add(landmark);
+            grid.update(landmark);
+        }
+        long start = System.nanoTime();
+        for (double far : new double[]{1e7, -1e8}) {
+            List<LandMark> expected = new ArrayList<>(all);
+            expected.sort(java.util.Comparator.comparingDouble(landmark -> distance(landmark, far, far / 2)));
+            List<LandMark> actual = grid.nearest(far, far / 2, 3);
+            assertEquals(3, actual.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(distance(expected.get(i), far, far / 2), distance(actual.get(i), far, far / 2), 1e-6);
+            }
+        }
+        assertTrue(System.nanoTime() - start < 200_000_000L, "Empty rings between the query and the map should be skipped.");
+    }
+
+    @Test
+    void testNearestMatchesBruteForce() {
+        LandmarkSpatialIndex grid = new LandmarkSpatialIndex(2.0);
+        java.util.Random random = new java.util.Random(7);
+        List<LandMark> all = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            LandMark landmark = landmark("Random_" + i, new CloudPoint(random.nextDouble() * 100, random.nextDouble() * 100),
+                    new CloudPoint(random.nextDouble() * 100, random.nextDouble() * 100));
+            all.add(landmark);
+            grid.update(landmark);
+        }
+        for (int q = 0; q < 20; q++) {
+            double x = random.nextDouble() * 120 - 10;
+            double y = random.nextDouble() * 120 - 10;
+            List<LandMark> expected = new ArrayList<>(all);
+            expected.sort(java.util.Comparator.comparingDouble(landmark -> distance(landmark, x, y)));
+            List<LandMark> actual = grid.nearest(x, y, 5);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(distance(expected.get(i), x, y), distance(actual.get(i), x, y), 1e-9);
+            }
+        }
+    }
+
+    private static double distance(LandMark landmark, double x, double y) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < landmark.getPointCount(); i++) {
+            best = Math.min(best, Math.hypot(landmark.getX(i) - x, landmark.getY(i) - y));
+        }
+        return best;
+    }
+}
@@ -0,0 +1,120 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.input.LiDarBinaryConverter;
+import bgu.spl.mics.application.objects.LiDarBinaryFormat;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiDarBinaryFormatTest {
+    private static final long SMALL_WINDOW = 64;
+
+    private Path json;
+    private Path binary;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        json = Files.createTempFile("lidar", ".json");
+        binary = Files.createTempFile("lidar", ".bin");
+        StringBuilder text = new StringBuilder("[");
+        for (int time = 1; time <= 12; time++) {
+            text.append("{\"time\":").append(time).append(",\"id\":\"Wall_").append(time % 4).append("\",\"cloudPoints\":[");
+            int points = time % 5; // 0 to 4 points, so records straddle the small window
+            for (int p = 0; p < points; p++) {
+                text.append(p == 0 ? "" : ",").append('[').append(time + p * 0.125).append(',').append(-time - p * 0.5).append(",0.1]");
+            }
+            text.append("]},");
+        }
+        text.append("{\"time\":13,\"id\":\"Café_1\",\"cloudPoints\":[[1.5,2.5,0.1]]},");
+        text.append("{\"time\":14,\"id\":\"ERROR\",\"cloudPoints\":[]}]");
+        Files.write(json, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(binary);
+    }
+
+    @Test
+    void testBinaryMatchesJson() throws IOException {
+        assertRoundTrip(false, 0.0);
+    }
+
+    @Test
+    void testFloat32MatchesJson() throws IOException {
+        assertRoundTrip(true, 1e-5);
+    }
+
+    @Test
+    void testDataIsAlignedAndRecordsStayInOneWindow() throws IOException {
+        new LiDarBinaryConverter(false, SMALL_WINDOW).convert(json, binary);
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(binary));
+
+        assertEquals(LiDarBinaryFormat.MAGIC, file.getInt(0));
+        int recordCount = file.getInt(12);
+        long dataStart = file.getLong(32);
+        assertEquals(14, recordCount);
+        assertEquals(0, dataStart % LiDarBinaryFormat.DATA_ALIGNMENT, "Point data starts on a page boundary.");
+
+        long packed = 0;
+        long end = 0;
+        for (int r = 0; r < recordCount; r++) {
+            int entry = LiDarBinaryFormat.HEADER_BYTES + r * LiDarBinaryFormat.INDEX_ENTRY_BYTES;
+            int pointCount = file.getInt(entry + 12);
+            long dataOffset = file.getLong(entry + 16);
+            long size = (long) pointCount * LiDarBinaryFormat.bytesPerPoint(false);
+            assertTrue(dataOffset >= end, "Records do not overlap.");
+            if (size > 0) {
+                assertEquals(dataOffset / SMALL_WINDOW, (dataOffset + size - 1) / SMALL_WINDOW,
+                        "Record " + r + " crosses a window boundary.");
+            }
+            for (long pad = end; pad < dataOffset; pad++) {
+                assertEquals(0, file.get((int) (dataStart + pad)), "Padding is zero-filled.");
+            }
+            packed += size;
+            end = dataOffset + size;
+        }
+        assertTrue(end > packed, "Some records should have been pushed to the next window.");
+        assertEquals(dataStart + end, file.capacity());
+    }
+
+    private void assertRoundTrip(boolean float32, double tolerance) throws IOException {
+        new LiDarBinaryConverter(float32, SMALL_WINDOW).convert(json, binary);
+        LiDarDataBase fromJson = new LiDarDataBase();
+        fromJson.loadLidarData(json.toString());
+        LiDarDataBase fromBinary = new LiDarDataBase();
+        fromBinary.loadLidarBinary(binary.toString());
+
+        assertEquals(fromJson.getLastTime(), fromBinary.getLastTime());
+        for (int time = 0; time <= 15; time++) {
+            assertEquals(fromJson.isErrorAt(time), fromBinary.isErrorAt(time), "Error flag at " + time);
+            for (String id : new String[]{"Wall_0", "Wall_1", "Wall_2", "Wall_3", "Café_1", "ERROR"}) {
+                StampedCloudPoints expected = fromJson.getStampedCloudPoints(time, id);
+                StampedCloudPoints actual = fromBinary.getStampedCloudPoints(time, id);
+                if (expected == null) {
+                    assertNull(actual, id + " at " + time);
+                    continue;
+                }
+                assertNotNull(actual, id + " at " + time);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getCloudPoints().size(), actual.getCloudPoints().size(), id + " at " + time);
+                for (int p = 0; p < expected.getCloudPoints().size(); p++) {
+                    assertEquals(expected.getCloudPoints().get(p).getX(), actual.getCloudPoints().get(p).getX(), tolerance);
+                    assertEquals(expected.getCloudPoints().get(p).getY(), actual.getCloudPoints().get(p).getY(), tolerance);
+                }
+            }
+        }
+        assertTrue(fromBinary.isErrorAt(14));
+    }
+}
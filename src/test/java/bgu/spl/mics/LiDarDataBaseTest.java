@@ -0,0 +1,88 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LiDarDataBaseTest checks the per-tick index and the retention window of the LiDAR database.
+ */
+public class LiDarDataBaseTest {
+
+    private LiDarDataBase dataBase;
+
+    @BeforeEach
+    void setUp() {
+        dataBase = new LiDarDataBase();
+        for (int time = 1; time <= 20; time++) {
+            dataBase.addRecord(new StampedCloudPoints("Wall_" + time, time, List.of(new CloudPoint(time, time))));
+        }
+    }
+
+    @Test
+    void testLookupByTimeAndId() {
+        assertNotNull(dataBase.getStampedCloudPoints(7, "Wall_7"));
+        assertNull(dataBase.getStampedCloudPoints(7, "Wall_8"));
+        assertNull(dataBase.getStampedCloudPoints(100, "Wall_7"));
+        assertEquals(20, dataBase.getLastTime());
+    }
+
+    @Test
+    void testCrowdedTickKeepsEveryObject() {
+        for (int i = 0; i < 5000; i++) {
+            dataBase.addRecord(new StampedCloudPoints("Crowd_" + i, 30, List.of(new CloudPoint(i, -i))));
+        }
+        dataBase.addRecord(new StampedCloudPoints("Crowd_7", 30, List.of(new CloudPoint(0, 0))));
+        for (int i = 0; i < 5000; i++) {
+            StampedCloudPoints record = dataBase.getStampedCloudPoints(30, "Crowd_" + i);
+            assertNotNull(record, "Crowd_" + i + " should be found.");
+            assertEquals("Crowd_" + i, record.getId());
+        }
+        assertEquals(7.0, dataBase.getStampedCloudPoints(30, "Crowd_7").getCloudPoints().get(0).getX(), 1e-6,
+                "The first record of an object at a tick is kept.");
+        assertNull(dataBase.getStampedCloudPoints(30, "Crowd_5000"));
+        assertEquals("Crowd_0", dataBase.getStampedCloudPointsAtTime(30).get(0).getId(), "Records keep their file order.");
+    }
+
+    @Test
+    void testEvictionFollowsSlowestWorker() {
+        dataBase.setRetention(2);
+        dataBase.registerWorker("fast");
+        dataBase.registerWorker("slow");
+
+        dataBase.releaseForWorker("fast", 15, 1);
+        assertTrue(dataBase.isRetained(1), "Nothing is evicted before every worker reported");
+
+        dataBase.releaseForWorker("slow", 10, 3);
+        assertFalse(dataBase.isRetained(4));
+        assertTrue(dataBase.isRetained(5));
+        assertNull(dataBase.getStampedCloudPoints(4, "Wall_4"));
+        assertNotNull(dataBase.getStampedCloudPoints(5, "Wall_5"));
+
+        dataBase.unregisterWorker("slow");
+        dataBase.releaseForWorker("fast", 16, 1);
+        assertFalse(dataBase.isRetained(12));
+        assertNotNull(dataBase.getStampedCloudPoints(13, "Wall_13"));
+
+        // late records for evicted ticks are not indexed again
+        dataBase.addRecord(new StampedCloudPoints("Late", 3, new ArrayList<>()));
+        assertNull(dataBase.getStampedCloudPoints(3, "Late"));
+    }
+
+    @Test
+    void testEvictedTimeIsReportedByTracker() {
+        dataBase.setRetention(1);
+        dataBase.registerWorker("worker1");
+        dataBase.releaseForWorker("worker1", 10, 1);
+
+        LiDarWorkerTracker tracker = new LiDarWorkerTracker("worker1", 1);
+        List<DetectedObject> detected = List.of(new DetectedObject("Wall_2", "Wall"));
+        assertThrows(IllegalStateException.class, () -> tracker.processDetectedObjects(detected, 2, dataBase));
+        assertEquals(1, tracker.processDetectedObjects(List.of(new DetectedObject("Wall_9", "Wall")), 9, dataBase).size());
+    }
+}
@@ -76,6 +76,40 @@ public class LiDarWorkerTrackerTest {
         assertEquals(2, trackedChair.getCoordinates().size(), "Tracked object should have 2 cloud points.");
     }
 
+    @Test
+    void testDownsamplingKeepsCentroid() {
+        lidarWorker.setDownsampler(new PointDownsampler(0, 1));
+        List<TrackedObject> trackedObjects = lidarWorker.processDetectedObjects(
+                List.of(new DetectedObject("Chair_1", "Chair")), 2, lidarDatabase);
+
+        List<CloudPoint> coordinates = trackedObjects.get(0).getCoordinates();
+        assertEquals(1, coordinates.size(), "The cap should leave a single point.");
+        assertEquals(1.25, coordinates.get(0).getX(), 1e-9, "The kept point should be the centroid.");
+        assertEquals(2.25, coordinates.get(0).getY(), 1e-9, "The kept point should be the centroid.");
+        assertEquals(2, lidarWorker.getDownsampler().getRawPoints());
+        assertEquals(1, lidarWorker.getDownsampler().getKeptPoints());
+    }
+
+    @Test
+    void testQuantizedPointsStayWithinPrecision() {
+        lidarWorker.setPointQuantum(0.01);
+        List<TrackedObject> trackedObjects = lidarWorker.processDetectedObjects(
+                List.of(new DetectedObject("Table_1", "Table")), 3, lidarDatabase);
+
+        List<CloudPoint> coordinates = trackedObjects.get(0).getCoordinates();
+        assertTrue(coordinates instanceof QuantizedCloudPoints, "Points should be quantized.");
+        assertEquals(4, ((QuantizedCloudPoints) coordinates).bytesPerPoint(), "Small offsets should use int16.");
+        assertEquals(3.5, coordinates.get(1).getX(), 0.005);
+        assertEquals(4.5, coordinates.get(1).getY(), 0.005);
+
+        java.nio.ByteBuffer wire = java.nio.ByteBuffer.allocate(((QuantizedCloudPoints) coordinates).encodedBytes());
+        ((QuantizedCloudPoints) coordinates).writeTo(wire);
+        wire.flip();
+        QuantizedCloudPoints decoded = QuantizedCloudPoints.readFrom(wire);
+        assertEquals(coordinates.get(1).getX(), decoded.getX(1), 0.0, "Wire form should decode to the same points.");
+        assertEquals(coordinates.get(1).getY(), decoded.getY(1), 0.0, "Wire form should decode to the same points.");
+    }
+
     @Test
     void testNoObjectsFound() {
         // Test when no objects are found in the database at time 0
@@ -0,0 +1,94 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.MapDeltaLog;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapDeltaLogTest {
+    private Path file;
+    private MapDeltaLog log;
+    private LandMark door;
+    private LandMark wall;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("map_delta", ".log");
+        log = new MapDeltaLog(file, 2, 2);
+        door = new LandMark("Door_1", "Door", new ArrayList<>(List.of(new CloudPoint(0, 0))));
+        wall = new LandMark("Wall_1", "Wall", new ArrayList<>(List.of(new CloudPoint(5, 5))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void record(int tick) {
+        assertTrue(log.isDue(tick));
+        boolean full = log.isCompactionDue();
+        List<LandMark> copies = new ArrayList<>();
+        for (LandMark landmark : full ? Arrays.asList(door, wall) : log.drainDirty()) {
+            copies.add(landmark.copy());
+        }
+        log.append(tick, copies, full, StatisticalFolder.getInstance());
+    }
+
+    @Test
+    void testReplayRebuildsEveryRecordedTick() throws IOException {
+        log.markDirty(door);
+        record(2);
+        assertFalse(log.isDue(3), "Records should be written only every interval.");
+
+        wall.updateCoordinates(new double[]{7}, new double[]{5}, 1);
+        log.markDirty(wall);
+        record(4);
+
+        door.updateCoordinates(new double[]{2}, new double[]{0}, 1);
+        log.markDirty(door);
+        record(6); // compaction: the whole map, replacing the earlier records
+        log.close();
+
+        assertEquals(List.of(6), MapDeltaLog.recordTicks(file), "Compaction should replace the earlier records.");
+        MapDeltaLog.Snapshot snapshot = MapDeltaLog.replay(file, 6);
+        assertEquals(2, snapshot.getLandmarks().size());
+        assertEquals(1.0, snapshot.getLandmarks().get("Door_1").getX(0), 0.001);
+        assertEquals(6.0, snapshot.getLandmarks().get("Wall_1").getX(0), 0.001);
+        assertEquals(2, snapshot.getLandmarks().get("Wall_1").getObservations(0));
+        assertNull(MapDeltaLog.replay(file, 5), "Nothing was recorded up to tick 5 after compaction.");
+    }
+
+    @Test
+    void testDeltasApplyInOrderAndTornTailIsIgnored() throws IOException {
+        log.markDirty(door);
+        log.markDirty(wall);
+        record(2);
+        door.updateCoordinates(new double[]{4}, new double[]{0}, 1);
+        log.markDirty(door);
+        record(4);
+        log.close();
+
+        assertEquals(List.of(2, 4), MapDeltaLog.recordTicks(file));
+        assertEquals(0.0, MapDeltaLog.replay(file, 3).getLandmarks().get("Door_1").getX(0), 0.001);
+        assertEquals(2.0, MapDeltaLog.replay(file, 4).getLandmarks().get("Door_1").getX(0), 0.001);
+        assertEquals(2, MapDeltaLog.replay(file, 4).getLandmarks().size(), "A delta should keep landmarks it does not touch.");
+
+        // A crash in the middle of an append leaves a partial record behind.
+        Files.write(file, new byte[]{0x4D, 0x44, 0x4C, 0x47, 0, 0, 1}, StandardOpenOption.APPEND);
+        assertEquals(List.of(2, 4), MapDeltaLog.recordTicks(file));
+        assertEquals(4, MapDeltaLog.replay(file, 100).getTick());
+    }
+}
@@ -10,6 +10,7 @@ import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.objects.Pose;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -119,6 +120,61 @@ class MessageBusImplTest {
                 "TestMicroService2 should be subscribed to PoseEvent.");
     }
 
+    @Test
+    public void testDirectedEventReachesOnlyItsTarget() throws InterruptedException {
+        // ** Test that an event sent to a MicroService skips the round-robin and is completed as usual **
+        messageBus.register(testMicroService1);
+        messageBus.register(testMicroService2);
+        messageBus.subscribeEvent(PoseEvent.class, testMicroService1);
+
+        Pose samplePose = new Pose(1, 2, 3, 40);
+        PoseEvent poseEvent = new PoseEvent(40, samplePose);
+        Future<Pose> poseFuture = messageBus.sendEvent(poseEvent, testMicroService2);
+        assertNotNull(poseFuture, "A Future should be returned for an event sent to a registered MicroService.");
+        assertEquals(poseEvent, messageBus.getMicroServiceQueues().get(testMicroService2).poll(300, TimeUnit.MILLISECONDS),
+                "The target should have received the event although it is not subscribed to it.");
+        assertTrue(messageBus.getMicroServiceQueues().get(testMicroService1).isEmpty(),
+                "The subscriber should not have received the event.");
+
+        messageBus.complete(poseEvent, samplePose);
+        assertEquals(samplePose, poseFuture.get(), "The result of the event should match the completed Pose.");
+
+        messageBus.unregister(testMicroService2);
+        assertNull(messageBus.sendEvent(new PoseEvent(41, samplePose), testMicroService2),
+                "No Future should be returned for an unregistered target.");
+        messageBus.unregister(testMicroService1);
+    }
+
+    @Test
+    public void testAwaitIdleWaitsUntilMessagesAreHandled() throws InterruptedException {
+        // ** Test that the bus is idle only once every message sent, and every message sent while handling it, was handled **
+        for (MicroService leftover : new ArrayList<>(messageBus.getMicroServiceQueues().keySet())) {
+            messageBus.unregister(leftover);
+        }
+        messageBus.register(testMicroService1);
+        messageBus.register(testMicroService2);
+        messageBus.subscribeBroadcast(TickBroadcast.class, testMicroService1);
+        assertTrue(messageBus.awaitIdle(0, TimeUnit.MILLISECONDS), "Nothing was sent yet.");
+
+        messageBus.sendBroadcast(new TickBroadcast(1));
+        assertFalse(messageBus.awaitIdle(20, TimeUnit.MILLISECONDS), "The broadcast is still queued.");
+
+        messageBus.awaitMessage(testMicroService1);
+        PoseEvent poseEvent = new PoseEvent(1, new Pose(0, 0, 0, 1));
+        messageBus.sendEvent(poseEvent, testMicroService2);
+        assertFalse(messageBus.awaitIdle(20, TimeUnit.MILLISECONDS), "The broadcast is being handled.");
+
+        Thread handler = new Thread(() -> messageBus.awaitMessage(testMicroService1));
+        handler.setDaemon(true);
+        handler.start();
+        assertFalse(messageBus.awaitIdle(20, TimeUnit.MILLISECONDS), "The event sent while handling it is still queued.");
+
+        messageBus.awaitMessage(testMicroService2);
+        messageBus.unregister(testMicroService2);
+        assertTrue(messageBus.awaitIdle(1, TimeUnit.SECONDS), "Every message was handled.");
+        messageBus.unregister(testMicroService1);
+    }
+
     // Mock MicroService class for testing purposes
     private class TestMicroService extends MicroService {
         public TestMicroService(String name) {
@@ -0,0 +1,125 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.LandmarkRegistry;
+import bgu.spl.mics.application.objects.LandmarkStore;
+import bgu.spl.mics.application.objects.ObjectIds;
+import bgu.spl.mics.application.objects.OffHeapLandmarkStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapLandmarkStoreTest {
+
+    private static void fuse(LandmarkStore store) {
+        LandMark door = new LandMark("Door_1", "Door", new ArrayList<>());
+        door.enableVarianceTracking();
+        store.putIfAbsent(door);
+        store.add(new LandMark("Wall_1", "Wall", new ArrayList<>(List.of(new CloudPoint(1, 1)))));
+        int symbol = ObjectIds.intern("Door_1");
+        store.mergeCoordinates(symbol, new double[]{0, 1}, new double[]{0, 1}, 2);
+        store.mergeCoordinates(symbol, new double[]{2, 3}, new double[]{0, 1}, 2);
+        // Outgrows the first block, so the landmark moves.
+        double[] xs = new double[9];
+        double[] ys = new double[9];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = 4 + i;
+            ys[i] = -i;
+        }
+        store.mergeCoordinates(symbol, xs, ys, xs.length);
+    }
+
+    @Test
+    void testMatchesOnHeapStore() {
+        LandmarkStore onHeap = new LandmarkRegistry();
+        LandmarkStore offHeap = new OffHeapLandmarkStore();
+        fuse(onHeap);
+        fuse(offHeap);
+
+        assertEquals(2, offHeap.size());
+        assertFalse(offHeap.holdsLandmarks());
+        assertTrue(offHeap.containsSymbol(ObjectIds.intern("Wall_1")));
+        assertNull(offHeap.getBySymbol(ObjectIds.intern("Chair_404")));
+        for (int l = 0; l < onHeap.size(); l++) {
+            LandMark expected = onHeap.get(l);
+            LandMark actual = offHeap.get(l);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getPointCount(), actual.getPointCount());
+            assertEquals(expected.isVarianceTracked(), actual.isVarianceTracked());
+            for (int i = 0; i < expected.getPointCount(); i++) {
+                assertEquals(expected.getX(i), actual.getX(i), 1e-12);
+                assertEquals(expected.getY(i), actual.getY(i), 1e-12);
+                assertEquals(expected.getObservations(i), actual.getObservations(i));
+                if (expected.isVarianceTracked()) {
+                    assertEquals(expected.getVariance(i), actual.getVariance(i), 1e-12);
+                }
+            }
+        }
+
+        offHeap.clear();
+        assertTrue(offHeap.isEmpty());
+        assertFalse(offHeap.containsSymbol(ObjectIds.intern("Door_1")));
+    }
+
+    @Test
+    void testCopyingWhileAddingNeverFails() throws InterruptedException {
+        for (LandmarkStore store : List.of(new LandmarkRegistry(), new OffHeapLandmarkStore())) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    store.add(new LandMark("Copy_" + i, "Wall", new ArrayList<>(List.of(new CloudPoint(i, i)))));
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                List<LandMark> copy = new ArrayList<>(store);
+                int seen = 0;
+                for (LandMark landmark : store) {
+                    assertNotNull(landmark);
+                    seen++;
+                }
+                assertTrue(copy.size() <= seen, "A later iteration sees at least the landmarks of an earlier copy.");
+            }
+            writer.join();
+            assertEquals(20000, new ArrayList<>(store).size());
+            assertFalse(store.add(new LandMark("Copy_0", "Wall", new ArrayList<>())), "A duplicate id is not added.");
+        }
+    }
+
+    @Test
+    void testReadingWhileMergingSeesWholeLandmarks() throws InterruptedException {
+        OffHeapLandmarkStore store = new OffHeapLandmarkStore();
+        store.add(new LandMark("Merged_A", "Wall", new ArrayList<>()));
+        store.add(new LandMark("Merged_B", "Wall", new ArrayList<>()));
+        int a = ObjectIds.intern("Merged_A");
+        int b = ObjectIds.intern("Merged_B");
+        // Both landmarks keep outgrowing their blocks, and each takes the block the other just left.
+        Thread writer = new Thread(() -> {
+            for (int count = 1; count <= 3000; count++) {
+                double[] ones = new double[count];
+                double[] twos = new double[count];
+                Arrays.fill(ones, 1);
+                Arrays.fill(twos, 2);
+                store.mergeCoordinates(a, ones, ones, count);
+                store.mergeCoordinates(b, twos, twos, count);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            LandMark landmark = store.getBySymbol(a);
+            for (int i = 0; i < landmark.getPointCount(); i++) {
+                assertEquals(1.0, landmark.getX(i), "A copy only holds points of its own landmark.");
+                if (i > 0) {
+                    assertTrue(landmark.getObservations(i) <= landmark.getObservations(i - 1), "A copy is taken between merges.");
+                }
+            }
+        }
+        writer.join();
+        assertEquals(3000, store.getBySymbol(b).getPointCount());
+    }
+}
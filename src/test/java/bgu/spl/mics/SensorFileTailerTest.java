@@ -0,0 +1,129 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.input.SensorFileTailer;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SensorFileTailerTest checks that records appended to a growing file are each published once.
+ */
+public class SensorFileTailerTest {
+
+    private Path file;
+    private SensorFileTailer tailer;
+    private GPSIMU gpsimu;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("poses", ".ndjson");
+        tailer = new SensorFileTailer();
+        gpsimu = new GPSIMU(new ArrayList<>());
+        tailer.watchPoseData(file.toString(), gpsimu);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        tailer.stop();
+        Files.deleteIfExists(file);
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static String pose(int time) {
+        return "{\"time\":" + time + ",\"x\":" + time + ".5,\"y\":-1.0,\"yaw\":90.0}";
+    }
+
+    @Test
+    void testPartialLineWaitsForItsNewline() throws IOException {
+        append(pose(1) + "\n" + "{\"time\":2,\"x\":2.5,");
+        assertEquals(1, tailer.pollOnce());
+        assertNotNull(gpsimu.getPoseByTime(1));
+        assertNull(gpsimu.getPoseByTime(2), "A line without its newline is not complete yet.");
+
+        append("\"y\":-1.0,\"yaw\":90.0}\n");
+        assertEquals(1, tailer.pollOnce());
+        assertEquals(2.5, gpsimu.getPoseByTime(2).getX(), 1e-6);
+        assertEquals(0, tailer.pollOnce(), "Nothing new was appended.");
+    }
+
+    @Test
+    void testTruncatedFileIsReadFromTheStart() throws IOException {
+        append(pose(1) + "\n" + pose(2) + "\n" + pose(3) + "\n");
+        assertEquals(3, tailer.pollOnce());
+
+        Files.write(file, (pose(7) + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(1, tailer.pollOnce());
+        assertNotNull(gpsimu.getPoseByTime(7));
+    }
+
+    @Test
+    void testMalformedLineIsSkipped() throws IOException {
+        append(pose(1) + "\n" + "{\"time\":2,\"x\":\n" + "not json\n" + pose(3) + "\n");
+        assertEquals(2, tailer.pollOnce(), "Only the two well-formed records are published.");
+        assertNotNull(gpsimu.getPoseByTime(1));
+        assertNull(gpsimu.getPoseByTime(2));
+        assertNotNull(gpsimu.getPoseByTime(3));
+    }
+
+    @Test
+    void testRecordsAcrossReadChunks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int records = 0;
+        while (text.length() < 3 * 64 * 1024) {
+            records++;
+            text.append(pose(records)).append('\n');
+        }
+        append(text.toString());
+        assertEquals(records, tailer.pollOnce());
+        for (int time = 1; time <= records; time++) {
+            assertNotNull(gpsimu.getPoseByTime(time), "Pose " + time + " should have been read.");
+            assertEquals(time + 0.5, gpsimu.getPoseByTime(time).getX(), 1e-3);
+        }
+    }
+
+    @Test
+    void testCameraRecordsAreFoundByTime() throws IOException {
+        Path cameraFile = Files.createTempFile("camera", ".ndjson");
+        try {
+            Camera camera = new Camera("1", 0);
+            camera.setLive(true);
+            Map<String, Camera> camerasByKey = new HashMap<>();
+            camerasByKey.put("camera1", camera);
+            SensorFileTailer cameraTailer = new SensorFileTailer();
+            cameraTailer.watchCameraData(cameraFile.toString(), camerasByKey);
+
+            StringBuilder text = new StringBuilder();
+            for (int time = 1; time <= 2000; time++) {
+                text.append("{\"camera1\":{\"time\":").append(time)
+                        .append(",\"detectedObjects\":[{\"id\":\"Wall_").append(time).append("\",\"description\":\"Wall\"}]}}\n");
+            }
+            text.append("{\"camera9\":{\"time\":5,\"detectedObjects\":[]}}\n");
+            Files.write(cameraFile, text.toString().getBytes(StandardCharsets.UTF_8));
+            assertEquals(2001, cameraTailer.pollOnce());
+
+            StampedDetectedObjects detections = camera.getObjectsAtTime(1234);
+            assertNotNull(detections);
+            assertEquals("Wall_1234", detections.getDetectedObjects().get(0).getId());
+            assertNull(camera.getObjectsAtTime(2001));
+        } finally {
+            Files.deleteIfExists(cameraFile);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CheckpointManager;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.LandMark;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.SimulationCheckpoint;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationCheckpointTest {
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("checkpoint", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testCheckpointRoundTrip() throws IOException {
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(10);
+        checkpoint.setStatistics(10, 7, 5, 1);
+        LandMark door = new LandMark("Door_1", "Door", new ArrayList<>(List.of(new CloudPoint(1, 2))));
+        door.updateCoordinates(new double[]{3}, new double[]{2}, 1);
+        Map<Integer, List<TrackedObject>> pending = new TreeMap<>();
+        pending.put(9, List.of(new TrackedObject("Wall_1", 9, "Wall", List.of(new CloudPoint(4, 4)))));
+        checkpoint.setFusionState(List.of(door), List.of(new Pose(0.5f, 1.5f, 90f, 8)), pending);
+        Map<Integer, StampedDetectedObjects> events = new TreeMap<>();
+        events.put(12, new StampedDetectedObjects(11, List.of(new DetectedObject("Chair_1", "Chair"))));
+        checkpoint.putCameraEvents("1", events);
+        checkpoint.putLidarWaiting("LiDarService1", List.of(new TrackedObject("Wall_2", 10, "Wall", List.of(new CloudPoint(6, 1)))));
+        checkpoint.write(file);
+
+        SimulationCheckpoint read = SimulationCheckpoint.read(file);
+        assertEquals(10, read.getTick());
+        assertEquals(7, read.getNumDetectedObjects());
+        assertEquals(1, read.getLandmarks().size());
+        LandMark restored = read.getLandmarks().get(0);
+        assertEquals(2.0, restored.getX(0), 1e-9);
+        assertEquals(2, restored.getObservations(0), "Observation weights should survive the checkpoint.");
+        assertEquals(8, read.getPoses().get(0).getTime());
+        assertEquals("Wall_1", read.getPendingTrackedObjects().get(9).get(0).getId());
+        assertEquals("Chair_1", read.getCameraEvents("1").get(12).getDetectedObjects().get(0).getId());
+        assertTrue(read.getCameraEvents("2").isEmpty());
+        assertEquals(6.0, read.getLidarWaiting("LiDarService1").get(0).getCoordinates().get(0).getX(), 1e-9);
+    }
+
+    @Test
+    void testCorruptCheckpointIsRejected() throws IOException {
+        new SimulationCheckpoint(5).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 5] ^= 1;
+        Files.write(file, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+        assertThrows(IOException.class, () -> SimulationCheckpoint.read(file));
+    }
+
+    @Test
+    void testFailingParticipantOnlyCostsTheCheckpoint() {
+        CheckpointManager checkpoints = CheckpointManager.getInstance();
+        CheckpointManager.Participant failing = new CheckpointManager.Participant() {
+            @Override
+            public void saveCheckpoint(SimulationCheckpoint checkpoint) {
+                throw new IllegalStateException("state unavailable");
+            }
+
+            @Override
+            public void restoreCheckpoint(SimulationCheckpoint checkpoint) {
+            }
+        };
+        checkpoints.register(failing);
+        try {
+            assertFalse(checkpoints.checkpoint(10));
+        } finally {
+            checkpoints.unregister(failing);
+        }
+    }
+}